@@ -11,10 +11,22 @@ class Alphabet {
     /** String of character. */
     private String _chars;
 
+    /** Indexed by character, one more than the index of that character,
+     *  or 0 for characters not in the alphabet. */
+    private int[] _index;
+
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        int max = -1;
+        for (int i = 0; i < chars.length(); i += 1) {
+            max = Math.max(max, chars.charAt(i));
+        }
+        _index = new int[max + 1];
+        for (int i = chars.length() - 1; i >= 0; i -= 1) {
+            _index[chars.charAt(i)] = i + 1;
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -29,14 +41,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        int i = 0;
-        while (i < size()) {
-            if (_chars.charAt(i) == ch) {
-                return true;
-            }
-            i += 1;
-        }
-        return false;
+        return ch < _index.length && _index[ch] != 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -51,13 +56,14 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        int i = 0;
-        while (i < size()) {
-            if (_chars.charAt(i) == ch) {
-                return i;
-            }
-            i += 1;
+        if (!contains(ch)) {
+            throw new EnigmaException("character not in the alphabet");
         }
-        throw new EnigmaException("character not in the alphabet");
+        return _index[ch] - 1;
+    }
+
+    @Override
+    public String toString() {
+        return _chars;
     }
 }
@@ -0,0 +1,343 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Batch Enigma processor.  Processes many input files in one JVM, each
+ *  exactly as Main would, parsing each distinct configuration file only
+ *  once and spreading the files over a work-stealing pool of threads.
+ *  @author Zachary Zhang
+ */
+public final class Batch {
+
+    /** Process the files specified by ARGS, which are
+     *      [--threads N] [--max-inflight BYTES] MANIFEST
+     *  or
+     *      [--threads N] [--max-inflight BYTES] --dir DIRECTORY
+     *  Each non-blank line of MANIFEST not starting with '#' contains the
+     *  names of a configuration file, an input file, and an output file,
+     *  relative to the directory containing MANIFEST.  With --dir, each
+     *  file X.in in DIRECTORY is processed into X.out using the
+     *  configuration X.conf if present, and otherwise default.conf.
+     *  At most N files (default: the number of processors) are processed
+     *  at once, and at most BYTES bytes of input (default 256MB) are held
+     *  in memory at once.  If the system property enigma.trace is set,
+     *  each file's conversions are traced, as by Main, to a file named
+     *  for its output file with ".trace" appended, rather than all to
+     *  the one file.  Prints a summary on the standard output, and
+     *  exits normally if every file was processed without error;
+     *  otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (new Batch(args).run()) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A batch described by ARGS (see main). */
+    Batch(String[] args) {
+        String manifest = null, dir = null;
+        for (int i = 0; i < args.length; i += 1) {
+            String opt = args[i];
+            if (!opt.startsWith("--")) {
+                if (manifest != null) {
+                    throw error("only one manifest allowed");
+                }
+                manifest = opt;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw error("missing value for %s", opt);
+            }
+            String val = args[++i];
+            try {
+                switch (opt) {
+                case "--threads":
+                    _threads = Integer.parseInt(val);
+                    break;
+                case "--max-inflight":
+                    _maxInflight = Integer.parseInt(val);
+                    break;
+                case "--dir":
+                    dir = val;
+                    break;
+                default:
+                    throw error("unknown option: %s", opt);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", opt, val);
+            }
+        }
+        if (_threads <= 0 || _maxInflight <= 0) {
+            throw error("thread count and in-flight limit must be positive");
+        }
+        if ((manifest == null) == (dir == null)) {
+            throw error("specify exactly one of a manifest or --dir");
+        }
+        _jobs = manifest != null ? readManifest(new File(manifest))
+            : scanDirectory(new File(dir));
+    }
+
+    /** Return the jobs listed in MANIFEST. */
+    static List<Job> readManifest(File manifest) {
+        ArrayList<Job> jobs = new ArrayList<>();
+        File base = manifest.getAbsoluteFile().getParentFile();
+        try (BufferedReader in =
+             new BufferedReader(new FileReader(manifest))) {
+            String line;
+            for (int n = 1; (line = in.readLine()) != null; n += 1) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 3) {
+                    throw error("bad manifest line %d", n);
+                }
+                jobs.add(new Job(resolve(base, fields[0]),
+                                 resolve(base, fields[1]),
+                                 resolve(base, fields[2])));
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", manifest);
+        }
+        return jobs;
+    }
+
+    /** Return the jobs for the .in files in DIR. */
+    static List<Job> scanDirectory(File dir) {
+        String[] names = dir.list();
+        if (names == null) {
+            throw error("could not open %s", dir);
+        }
+        Arrays.sort(names);
+        ArrayList<Job> jobs = new ArrayList<>();
+        File fallback = new File(dir, "default.conf");
+        for (String name : names) {
+            if (!name.endsWith(".in")) {
+                continue;
+            }
+            String stem = name.substring(0, name.length() - 3);
+            File config = new File(dir, stem + ".conf");
+            jobs.add(new Job(config.exists() ? config : fallback,
+                             new File(dir, name),
+                             new File(dir, stem + ".out")));
+        }
+        return jobs;
+    }
+
+    /** Return NAME resolved against BASE unless it is absolute. */
+    private static File resolve(File base, String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? file : new File(base, name);
+    }
+
+    /** Process all my jobs, print a summary, and return true iff all
+     *  succeeded. */
+    boolean run() {
+        long start = System.nanoTime();
+        HashMap<File, MachinePool> pools = new HashMap<>();
+        for (Job job : _jobs) {
+            File key = job.config.getAbsoluteFile();
+            if (!pools.containsKey(key)) {
+                pools.put(key, new MachinePool(key));
+            }
+            job.pool = pools.get(key);
+        }
+
+        ForkJoinPool workers = new ForkJoinPool(_threads);
+        Semaphore inflight = new Semaphore(_maxInflight);
+        try {
+            for (Job job : _jobs) {
+                int cost = (int) Math.max(1, Math.min(job.input.length(),
+                                                      _maxInflight));
+                inflight.acquireUninterruptibly(cost);
+                workers.execute(() -> {
+                    try {
+                        process(job);
+                    } finally {
+                        inflight.release(cost);
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+        }
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = 0;
+        for (Job job : _jobs) {
+            if (job.failure != null) {
+                failed += 1;
+                System.out.printf("FAILED %s: %s%n", job.input,
+                                  job.failure);
+            }
+        }
+        System.out.printf("%d files (%d failed), %d configurations, "
+                          + "%d threads%n", _jobs.size(), failed,
+                          pools.size(), _threads);
+        System.out.printf("%d bytes in, %d bytes out in %.3f s: "
+                          + "%.1f MB/s, %.1f files/s%n",
+                          _bytesIn.get(), _bytesOut.get(), seconds,
+                          _bytesIn.get() / 1e6 / seconds,
+                          _jobs.size() / seconds);
+        return failed == 0;
+    }
+
+    /** Process JOB, recording any failure in it. */
+    private void process(Job job) {
+        Machine machine = null;
+        try {
+            machine = job.pool.borrow();
+            byte[] data = Files.readAllBytes(job.input.toPath());
+            _bytesIn.addAndGet(data.length);
+            try (PrintStream out =
+                 new PrintStream(new BufferedOutputStream(
+                     new FileOutputStream(job.output), OUTPUT_BUFFER))) {
+                Main main = new Main(null, new Scanner(new String(data)), out);
+                if (System.getProperty("enigma.trace") != null) {
+                    main.setTraceName(job.output.getPath() + ".trace");
+                }
+                main.process(machine);
+                out.flush();
+                if (out.checkError()) {
+                    throw error("could not write %s", job.output);
+                }
+            }
+            _bytesOut.addAndGet(job.output.length());
+        } catch (EnigmaException excp) {
+            job.failure = excp.getMessage();
+        } catch (IOException excp) {
+            job.failure = "could not process " + job.input;
+        } catch (RuntimeException excp) {
+            job.failure = excp.toString();
+        } finally {
+            if (machine != null) {
+                job.pool.release(machine);
+            }
+        }
+    }
+
+    /** One file to process. */
+    static final class Job {
+        /** A job converting INPUT into OUTPUT using the configuration
+         *  file CONFIG. */
+        Job(File config, File input, File output) {
+            this.config = config;
+            this.input = input;
+            this.output = output;
+        }
+
+        /** Configuration file. */
+        final File config;
+        /** Input file. */
+        final File input;
+        /** Output file. */
+        final File output;
+        /** Source of machines for config. */
+        private MachinePool pool;
+        /** Description of the failure of this job, or null. */
+        private volatile String failure;
+    }
+
+    /** The machines configured from one configuration file.  The file is
+     *  parsed once, lazily, and machines are copied from the result as
+     *  needed and reused by later jobs, keeping their settings caches. */
+    private static final class MachinePool {
+        /** A pool for the configuration file CONFIG. */
+        MachinePool(File config) {
+            _file = config;
+        }
+
+        /** Return a machine for my exclusive use until released. */
+        Machine borrow() {
+            Machine result = _idle.poll();
+            return result != null ? result : prototype().copy();
+        }
+
+        /** Return MACHINE, obtained from borrow, to the pool. */
+        void release(Machine machine) {
+            _idle.add(machine);
+        }
+
+        /** Return my parsed configuration, parsing it if needed. */
+        private synchronized Machine prototype() {
+            if (_prototype == null) {
+                if (_error != null) {
+                    throw error("%s", _error);
+                }
+                try (Scanner config = new Scanner(_file)) {
+                    _prototype = new Main(config, null, null).readConfig();
+                } catch (FileNotFoundException excp) {
+                    _error = "could not open " + _file;
+                } catch (EnigmaException excp) {
+                    _error = excp.getMessage();
+                } catch (NoSuchElementException excp) {
+                    _error = "configuration file truncated";
+                }
+                if (_error != null) {
+                    _error = _file.getName() + ": " + _error;
+                    throw error("%s", _error);
+                }
+            }
+            return _prototype;
+        }
+
+        /** Configuration file. */
+        private final File _file;
+        /** Machine read from _file, or null if not yet read. */
+        private Machine _prototype;
+        /** Error from reading _file, or null. */
+        private String _error;
+        /** Machines not currently in use. */
+        private final ConcurrentLinkedQueue<Machine> _idle =
+            new ConcurrentLinkedQueue<>();
+    }
+
+    /** Size of the buffer for each output file. */
+    static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Maximum number of files processed at once. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** Maximum number of input bytes held in memory at once. */
+    private int _maxInflight = 256 << 20;
+
+    /** The files to process. */
+    private final List<Job> _jobs;
+
+    /** Total bytes read. */
+    private final AtomicLong _bytesIn = new AtomicLong();
+
+    /** Total bytes written. */
+    private final AtomicLong _bytesOut = new AtomicLong();
+}
@@ -0,0 +1,167 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for batch processing.
+ *  @author Zachary Zhang
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Write TEXT to the file NAME in DIR, returning the file. */
+    static File write(File dir, String name, String text)
+        throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), text.getBytes("ISO-8859-1"));
+        return file;
+    }
+
+    /** Return the contents of FILE. */
+    static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "ISO-8859-1");
+    }
+
+    /** Return the output of Main, run alone, on INPUT with the
+     *  configuration CONFIG. */
+    static String expected(String config, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Main main = new Main(new Scanner(config), new Scanner(input), out);
+        main.process(main.readConfig());
+        out.flush();
+        return bytes.toString();
+    }
+
+    /** Return an input for CONFIG of MESSAGES random messages, each
+     *  under new random settings, drawn using RAND. */
+    static String input(RandomConfig config, int messages, Random rand) {
+        StringBuilder text = new StringBuilder();
+        for (int m = 0; m < messages; m += 1) {
+            text.append(config.settingsLine(2, true, rand.nextBoolean()))
+                .append('\n');
+            for (int n = 1 + rand.nextInt(4); n > 0; n -= 1) {
+                for (int i = rand.nextInt(30); i > 0; i -= 1) {
+                    text.append(config.alphabet().toChar(
+                        config.randomIndex()));
+                }
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /** Return a new empty temporary directory. */
+    static File directory() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Delete DIR and the files in it. */
+    static void delete(File dir) {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDirectoryMatchesMainPerFile() throws IOException {
+        File dir = directory();
+        try {
+            Random rand = new Random(0);
+            RandomConfig shared = new RandomConfig(rand, 26, 5, 3, 2, false);
+            RandomConfig own = new RandomConfig(rand, 10, 4, 2, 1, true);
+            write(dir, "default.conf", shared.configText());
+            write(dir, "x3.conf", own.configText());
+            String[] inputs = new String[6];
+            for (int f = 0; f < inputs.length; f += 1) {
+                inputs[f] = input(f == 3 ? own : shared, 5, rand);
+                write(dir, "x" + f + ".in", inputs[f]);
+            }
+            assertTrue(new Batch(new String[] {
+                "--threads", "3", "--dir", dir.getPath() }).run());
+            for (int f = 0; f < inputs.length; f += 1) {
+                String config = (f == 3 ? own : shared).configText();
+                assertEquals(expected(config, inputs[f]),
+                             read(new File(dir, "x" + f + ".out")));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testManifestIsolatesFailures() throws IOException {
+        File dir = directory();
+        try {
+            Random rand = new Random(1);
+            RandomConfig config = new RandomConfig(rand, 26, 5, 3, 2, false);
+            write(dir, "a.conf", config.configText());
+            String good = input(config, 3, rand);
+            write(dir, "good.in", good);
+            write(dir, "bad.in", "this is not a settings line\n");
+            write(dir, "manifest", "# config input output\n\n"
+                  + "a.conf good.in good.out\n"
+                  + "a.conf bad.in bad.out\n"
+                  + "a.conf missing.in missing.out\n"
+                  + "a.conf good.in again.out\n");
+            assertFalse(new Batch(new String[] {
+                "--threads", "2", "--max-inflight", "64",
+                new File(dir, "manifest").getPath() }).run());
+            String expected = expected(config.configText(), good);
+            assertEquals(expected, read(new File(dir, "good.out")));
+            assertEquals(expected, read(new File(dir, "again.out")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testEachFileHasItsOwnTrace() throws IOException {
+        File dir = directory();
+        String old = System.getProperty("enigma.trace");
+        System.setProperty("enigma.trace", new File(dir, "all").getPath());
+        try {
+            Random rand = new Random(2);
+            RandomConfig config = new RandomConfig(rand, 26, 5, 3, 2, false);
+            write(dir, "default.conf", config.configText());
+            for (int f = 0; f < 3; f += 1) {
+                write(dir, "x" + f + ".in", config.settingsLine(0, false)
+                      + "\n" + "AB".repeat(f + 1) + "\n");
+            }
+            assertTrue(new Batch(new String[] {
+                "--threads", "3", "--dir", dir.getPath() }).run());
+            assertFalse(new File(dir, "all").exists());
+            for (int f = 0; f < 3; f += 1) {
+                File trace = new File(dir, "x" + f + ".out.trace");
+                assertEquals(2 * (f + 1), new TraceReader(trace).count());
+            }
+        } finally {
+            if (old == null) {
+                System.clearProperty("enigma.trace");
+            } else {
+                System.setProperty("enigma.trace", old);
+            }
+            delete(dir);
+        }
+    }
+}
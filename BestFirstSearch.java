@@ -0,0 +1,329 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** A scheduler for trial decryptions that finds the same best candidates
+ *  as scoring every candidate completely, while decrypting less.  Each
+ *  candidate is decrypted a block at a time, and after each block is
+ *  given a bound: its score so far plus the most that the rest of the
+ *  ciphertext could add, which is, for each remaining ciphertext
+ *  character, the largest weight of any other character (a machine
+ *  whose reflector has no fixed points never converts a character to
+ *  itself), or of any character at all if a reflector searched may have
+ *  fixed points.  A candidate whose bound does not exceed the current
+ *  K-th best score can never be retained and is abandoned.
+ *
+ *  Candidates not yet begun are handed out in turn; those begun wait in
+ *  a frontier shared by all workers, a row of lock-free queues
+ *  ("buckets"), each holding the candidates whose bounds lie in one
+ *  band, the highest band first.  Workers take candidates from the
+ *  highest occupied band, and keep decrypting a candidate for as long as
+ *  no other is in a higher band.  Working on the most promising
+ *  candidates first raises the K-th best score early.  Whenever it
+ *  rises, the buckets whose bands lie wholly at or below it are passed
+ *  over and their candidates abandoned without being looked at again.
+ *  @author Zachary Zhang
+ */
+class BestFirstSearch {
+
+    /** A scheduler for decryptions of CIPHER scored by SCORER, done
+     *  BLOCK > 0 characters at a time by THREADS > 0 workers.  Unless
+     *  SELFENCRYPTING, the machines searched must have reflectors without
+     *  fixed points. */
+    BestFirstSearch(int[] cipher, Scorer scorer, int block, int threads,
+                    boolean selfEncrypting) {
+        if (block <= 0 || threads <= 0) {
+            throw error("bad best-first search parameters");
+        }
+        _cipher = cipher;
+        _weights = scorer.weights();
+        _block = block;
+        _threads = threads;
+        _selfEncrypting = selfEncrypting;
+        _engines = new PrefixEngine[threads];
+        _rest = new double[cipher.length + 1];
+        _rest[cipher.length] = SLACK;
+        double lowest = 0;
+        for (int i = cipher.length - 1; i >= 0; i -= 1) {
+            double best = Double.NEGATIVE_INFINITY;
+            double worst = Double.POSITIVE_INFINITY;
+            for (int p = 0; p < _weights.length; p += 1) {
+                if (selfEncrypting || p != cipher[i]) {
+                    best = Math.max(best, _weights[p]);
+                    worst = Math.min(worst, _weights[p]);
+                }
+            }
+            _rest[i] = _rest[i + 1] + best;
+            lowest += worst;
+        }
+        double range = _rest[0] - lowest;
+        _width = range > 0 ? range / BUCKETS : 1;
+        _buckets = new ArrayList<>();
+        for (int b = 0; b < BUCKETS; b += 1) {
+            _buckets.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /** Offer to TOP the decryption of my ciphertext by the rotors and
+     *  plugboard of M, which must have had its rotors and plugboard set,
+     *  started at each of the rotor settings in STARTS (indexed by slot),
+     *  naming each candidate by the settings line SETTINGS returns for
+     *  its starting settings.  Only candidates that could be retained are
+     *  decrypted completely.  M itself is not changed. */
+    void search(Machine M, List<int[]> starts, TopK top,
+                Function<int[], String> settings) {
+        if (!_selfEncrypting && !M.rotor(0).permutation().derangement()) {
+            throw error("reflector %s has fixed points",
+                        M.rotor(0).name());
+        }
+        _threshold = top.threshold();
+        _starts = starts;
+        _next.set(0);
+        _lowest.set(0);
+        _candidates.addAndGet(starts.size());
+        for (int w = 0; w < _threads; w += 1) {
+            if (_engines[w] == null) {
+                _engines[w] = new PrefixEngine(M);
+            } else {
+                _engines[w].setRotors(M);
+            }
+        }
+        ForkJoinPool pool = _threads == 1 ? null : new ForkJoinPool(_threads);
+        try {
+            if (pool == null) {
+                work(_engines[0], top, settings);
+            } else {
+                ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (PrefixEngine engine : _engines) {
+                    tasks.add(pool.submit(() ->
+                                          work(engine, top, settings)));
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            for (ConcurrentLinkedQueue<Candidate> bucket : _buckets) {
+                bucket.clear();
+            }
+            _starts = null;
+        }
+    }
+
+    /** Take candidates and decrypt them with ENGINE block by block for as
+     *  long as they lead, returning them to the frontier when they do
+     *  not, until there are none left that could be retained and no
+     *  other worker holds one.  Offer those decrypted completely to TOP
+     *  under the names given by SETTINGS. */
+    private void work(PrefixEngine engine, TopK top,
+                      Function<int[], String> settings) {
+        int[] cipher = _cipher;
+        double[] weights = _weights;
+        while (true) {
+            _active.incrementAndGet();
+            Candidate c = take();
+            if (c == null) {
+                if (_active.decrementAndGet() == 0) {
+                    return;
+                }
+                Thread.yield();
+                continue;
+            }
+            engine.setPositions(c.positions);
+            int done = c.done;
+            double score = c.score, bound = c.bound;
+            while (bound > _threshold && done < cipher.length
+                   && (done == c.done || leads(bound))) {
+                int end = Math.min(done + _block, cipher.length);
+                for (int i = done; i < end; i += 1) {
+                    score += weights[engine.convert(cipher[i])];
+                }
+                _characters.addAndGet(end - done);
+                done = end;
+                bound = score + _rest[end];
+            }
+            if (done == cipher.length) {
+                if (score > _threshold) {
+                    top.add(score, settings.apply(c.start));
+                    _threshold = top.threshold();
+                }
+            } else if (bound > _threshold) {
+                c.done = done;
+                c.score = score;
+                c.bound = bound;
+                c.positions = engine.positions();
+                int b = bucket(bound);
+                _buckets.get(b).add(c);
+                _lowest.accumulateAndGet(b, Math::min);
+            }
+            _active.decrementAndGet();
+        }
+    }
+
+    /** Remove and return the next candidate not yet begun or, if there
+     *  are none, one from the highest occupied band of the frontier that
+     *  could still be retained.  Return null if there is none. */
+    private Candidate take() {
+        List<int[]> starts = _starts;
+        if (_next.get() < starts.size()) {
+            int next = _next.getAndIncrement();
+            if (next < starts.size()) {
+                return new Candidate(starts.get(next), _rest[0]);
+            }
+        }
+        int low = _lowest.get();
+        Candidate c = scan(low);
+        if (c == null && low > 0) {
+            _lowest.compareAndSet(low, 0);
+            c = scan(0);
+        }
+        return c;
+    }
+
+    /** Remove and return a candidate that could still be retained from
+     *  the first occupied bucket of the frontier numbered LOW or more, or
+     *  null if there is none.  _lowest is only a hint: another worker
+     *  may refill a bucket above it just after it is raised past that
+     *  bucket, so a scan that finds nothing from LOW > 0 must be repeated
+     *  from 0 before the frontier is taken to be empty. */
+    private Candidate scan(int low) {
+        for (int b = low; live(b); b += 1) {
+            Candidate c = _buckets.get(b).poll();
+            if (c != null) {
+                if (b > low) {
+                    _lowest.compareAndSet(low, b);
+                }
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff a candidate with bound BOUND is in a band at
+     *  least as high as any occupied one, and none is waiting to be
+     *  begun. */
+    private boolean leads(double bound) {
+        return _next.get() >= _starts.size()
+            && bucket(bound) <= _lowest.get();
+    }
+
+    /** Return the index of the bucket for candidates with bound
+     *  BOUND. */
+    private int bucket(double bound) {
+        double b = (_rest[0] - bound) / _width;
+        return b <= 0 ? 0 : b >= BUCKETS - 1 ? BUCKETS - 1 : (int) b;
+    }
+
+    /** Return true iff B is a bucket whose band lies partly above the
+     *  score a candidate must exceed to be retained. */
+    private boolean live(int b) {
+        return b < BUCKETS && _rest[0] - b * _width + SLACK > _threshold;
+    }
+
+    /** Return the number of candidates given to search so far. */
+    long candidates() {
+        return _candidates.get();
+    }
+
+    /** Return the number of characters decrypted so far. */
+    long characters() {
+        return _characters.get();
+    }
+
+    /** A starting setting and the progress of its decryption. */
+    private static final class Candidate {
+        /** A candidate starting at rotor settings START, whose bound is
+         *  BOUND before any decryption. */
+        Candidate(int[] start, double bound) {
+            this.start = start;
+            this.positions = start;
+            this.bound = bound;
+        }
+
+        /** Rotor settings before the first character. */
+        final int[] start;
+        /** Rotor settings after the last character decrypted. */
+        int[] positions;
+        /** Number of characters decrypted. */
+        int done;
+        /** Score of the characters decrypted. */
+        double score;
+        /** Largest score the complete decryption could have. */
+        double bound;
+    }
+
+    /** Number of buckets in the frontier. */
+    static final int BUCKETS = 1 << 12;
+
+    /** Added to every bound to cover rounding in the sums of weights, so
+     *  that no candidate is abandoned that could be retained. */
+    private static final double SLACK = 1e-6;
+
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Scores of each plaintext character. */
+    private final double[] _weights;
+
+    /** Number of characters decrypted at a time. */
+    private final int _block;
+
+    /** Number of workers. */
+    private final int _threads;
+
+    /** True iff the machines searched may convert characters to
+     *  themselves. */
+    private final boolean _selfEncrypting;
+
+    /** Engine of each worker, kept from one search to the next. */
+    private final PrefixEngine[] _engines;
+
+    /** _rest[I] is the largest score that characters I and beyond of the
+     *  plaintext could add, plus SLACK. */
+    private final double[] _rest;
+
+    /** Width of the band of bounds of each bucket.  Bucket B holds
+     *  candidates with bounds at most _rest[0] - B * _width, and (but
+     *  for the last) more than that less _width. */
+    private final double _width;
+
+    /** The frontier: candidates begun and waiting for their next blocks,
+     *  by band. */
+    private final List<ConcurrentLinkedQueue<Candidate>> _buckets;
+
+    /** Usually, no bucket below this one holds candidates.  Workers
+     *  adding and taking candidates at once may leave it too high, so it
+     *  only says where to start looking (see scan). */
+    private final AtomicInteger _lowest = new AtomicInteger();
+
+    /** Starting settings of the candidates of the current search. */
+    private volatile List<int[]> _starts;
+
+    /** Index in _starts of the next candidate to begin. */
+    private final AtomicInteger _next = new AtomicInteger();
+
+    /** Number of workers holding or looking for a candidate. */
+    private final AtomicInteger _active = new AtomicInteger();
+
+    /** Number of candidates searched. */
+    private final AtomicLong _candidates = new AtomicLong();
+
+    /** Number of characters decrypted. */
+    private final AtomicLong _characters = new AtomicLong();
+
+    /** The score a candidate must exceed to be retained, as of the last
+     *  candidate offered to the current search's TopK. */
+    private volatile double _threshold;
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Several configured machines in series, as for superencipherment:
+ *  each character is converted by the first machine, its result by the
+ *  second, and so on, every machine advancing once per character.  With
+ *  the "compiled" engine the whole series is one generated method, with
+ *  the plugboards between machines fused, so that no intermediate
+ *  buffers or calls separate the stages; any other engine runs the
+ *  machines' engines in lock step, one character at a time.
+ *  @author Zachary Zhang
+ */
+class Cascade extends Engine {
+
+    /** A series of the machines in STAGES, which must share an alphabet
+     *  and have had their rotors and plugboards set, each converting with
+     *  the engine called ENGINE (one of Engine.NAMES).  As for
+     *  Engine.forName, the "machine" engine advances the machines
+     *  themselves; other engines leave them unchanged. */
+    Cascade(List<Machine> stages, String engine) {
+        if (stages.isEmpty()) {
+            throw error("no machines in cascade");
+        }
+        _alphabet = stages.get(0).alphabet();
+        if (engine.equals("compiled")) {
+            _stages = new Engine[] { CompiledEngine.compile(stages) };
+        } else {
+            _stages = new Engine[stages.size()];
+            for (int s = 0; s < _stages.length; s += 1) {
+                Machine M = stages.get(s);
+                if (!M.alphabet().toString().equals(_alphabet.toString())) {
+                    throw error("machines have different alphabets");
+                }
+                _stages[s] = Engine.forName(engine, M);
+            }
+        }
+    }
+
+    @Override
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    @Override
+    int convert(int c) {
+        for (Engine stage : _stages) {
+            c = stage.convert(c);
+        }
+        return c;
+    }
+
+    @Override
+    void convert(int[] msg, int start, int end) {
+        Engine[] stages = _stages;
+        if (stages.length == 1) {
+            stages[0].convert(msg, start, end);
+            return;
+        }
+        for (int i = start; i < end; i += 1) {
+            int c = msg[i];
+            for (Engine stage : stages) {
+                c = stage.convert(c);
+            }
+            msg[i] = c;
+        }
+    }
+
+    /** Return the number of engines that each character passes
+     *  through: 1 when the series is compiled into one. */
+    int engines() {
+        return _stages.length;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** The engines converting each character, in order. */
+    private final Engine[] _stages;
+}
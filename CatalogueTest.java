@@ -0,0 +1,96 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the cycle catalogue.
+ *  @author Zachary Zhang
+ */
+public class CatalogueTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testIndicatorsLeadBackToSettings() throws IOException {
+        File catalogue = File.createTempFile("enigma", ".cat");
+        File indicators = File.createTempFile("enigma", ".ind");
+        try {
+            for (int c = 0; c < 5; c += 1) {
+                Random rand = new Random(c);
+                RandomConfig config =
+                    new RandomConfig(rand, 8, 4, 3, 1, false);
+                Machine M = config.machine();
+                CycleCatalogue.build(M, catalogue, 1);
+                String settings = config.settingsLine(2, c % 2 == 0);
+                Alphabet alpha = config.alphabet();
+                StringBuilder keys = new StringBuilder();
+                for (int k = 0; k < alpha.size(); k += 1) {
+                    String key = "" + alpha.toChar(k)
+                        + alpha.toChar((k + 3) % alpha.size())
+                        + alpha.toChar((k + 5) % alpha.size());
+                    M.setUp(settings);
+                    keys.append(M.convert(key + key)).append('\n');
+                }
+                Files.write(indicators.toPath(),
+                            keys.toString().getBytes("ISO-8859-1"));
+                int[][] signature =
+                    CycleCatalogue.fromIndicators(indicators, alpha);
+                List<String> found =
+                    new CycleCatalogue(M, catalogue).lookup(signature);
+                assertTrue(settings,
+                           found.contains(settings.replaceAll(" \\(.*",
+                                                              "")));
+                for (String line : found) {
+                    Machine other = config.machine();
+                    other.setUp(line);
+                    assertTrue(line, Arrays.deepEquals(
+                        signature, CycleCatalogue.characteristic(
+                            new TableEngine(other))));
+                }
+            }
+        } finally {
+            catalogue.delete();
+            indicators.delete();
+        }
+    }
+
+    @Test
+    public void testOtherWiringsOfTheSameShapeAreRejected()
+        throws IOException {
+        File catalogue = File.createTempFile("enigma", ".cat");
+        try {
+            Machine built =
+                new RandomConfig(new Random(0), 8, 4, 3, 1, false).machine();
+            Machine other =
+                new RandomConfig(new Random(1), 8, 4, 3, 1, false).machine();
+            CycleCatalogue.build(built, catalogue, 1);
+            assertEquals(new KeySpace(built).orders(),
+                         new KeySpace(other).orders());
+            new CycleCatalogue(new RandomConfig(new Random(0), 8, 4, 3, 1,
+                                                false).machine(),
+                               catalogue);
+            try {
+                new CycleCatalogue(other, catalogue);
+                fail("catalogue opened for other wirings");
+            } catch (EnigmaException excp) {
+                assertEquals("catalogue was built for another configuration",
+                             excp.getMessage());
+            }
+        } finally {
+            catalogue.delete();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A reusable buffer of work for an EnigmaProcessor: either a run of
+ *  text, a run of alphabet indices, or a settings line that re-keys the
+ *  machine.  Chunks are obtained from a ChunkPool and are returned to it
+ *  by release once their final consumer is done with them.
+ *  @author Zachary Zhang
+ */
+final class Chunk {
+
+    /** Kind of a chunk holding characters. */
+    static final int TEXT = 0;
+
+    /** Kind of a chunk holding alphabet indices. */
+    static final int INDICES = 1;
+
+    /** Kind of a chunk holding a settings line. */
+    static final int SETTINGS = 2;
+
+    /** A chunk belonging to POOL, able to hold CAPACITY characters or
+     *  indices. */
+    Chunk(ChunkPool pool, int capacity) {
+        _pool = pool;
+        _text = new char[capacity];
+        _indices = new int[capacity];
+    }
+
+    /** Return my kind: TEXT, INDICES, or SETTINGS. */
+    int kind() {
+        return _kind;
+    }
+
+    /** Return the number of characters or indices I hold. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the maximum number of characters or indices I hold. */
+    int capacity() {
+        return _text.length;
+    }
+
+    /** Return my character buffer, of which the first length() entries
+     *  are significant when kind() is TEXT. */
+    char[] text() {
+        return _text;
+    }
+
+    /** Return my index buffer, of which the first length() entries
+     *  are significant when kind() is INDICES. */
+    int[] indices() {
+        return _indices;
+    }
+
+    /** Return my settings line when kind() is SETTINGS. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Make me a TEXT chunk holding the first LENGTH characters of my
+     *  buffer, and return me. */
+    Chunk setText(int length) {
+        return set(TEXT, length, null);
+    }
+
+    /** Make me a TEXT chunk holding the characters of S, which must fit,
+     *  and return me. */
+    Chunk setText(String s) {
+        if (s.length() > capacity()) {
+            throw error("text too long for chunk");
+        }
+        s.getChars(0, s.length(), _text, 0);
+        return setText(s.length());
+    }
+
+    /** Make me an INDICES chunk holding the first LENGTH indices of my
+     *  buffer, and return me. */
+    Chunk setIndices(int length) {
+        return set(INDICES, length, null);
+    }
+
+    /** Make me a SETTINGS chunk for the settings line SETTINGS, in the
+     *  format accepted by Machine.setUp, and return me. */
+    Chunk setSettings(String settings) {
+        return set(SETTINGS, 0, settings);
+    }
+
+    /** Return the contents of a TEXT chunk as a String. */
+    @Override
+    public String toString() {
+        return _kind == SETTINGS ? _settings : new String(_text, 0, _length);
+    }
+
+    /** Return me to my pool. */
+    void release() {
+        _settings = null;
+        _pool.release(this);
+    }
+
+    /** Return true iff I am in my pool's free list.  Called only by my
+     *  pool, holding its lock. */
+    boolean isFree() {
+        return _free;
+    }
+
+    /** Record whether I am in my pool's free list, according to FREE.
+     *  Called only by my pool, holding its lock. */
+    void setFree(boolean free) {
+        _free = free;
+    }
+
+    /** Set my KIND, LENGTH, and SETTINGS and return me. */
+    private Chunk set(int kind, int length, String settings) {
+        if (length < 0 || length > capacity()) {
+            throw error("bad chunk length");
+        }
+        _kind = kind;
+        _length = length;
+        _settings = settings;
+        return this;
+    }
+
+    /** The pool to which I belong. */
+    private final ChunkPool _pool;
+
+    /** My kind. */
+    private int _kind;
+
+    /** Number of significant characters or indices. */
+    private int _length;
+
+    /** Character buffer. */
+    private final char[] _text;
+
+    /** Index buffer. */
+    private final int[] _indices;
+
+    /** Settings line, or null. */
+    private String _settings;
+
+    /** True while I am in my pool's free list. */
+    private boolean _free;
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+/** A fixed set of Chunks that are recycled rather than reallocated, so
+ *  that a pipeline of EnigmaProcessors creates no garbage in its steady
+ *  state.  Safe for use by multiple threads.
+ *  @author Zachary Zhang
+ */
+final class ChunkPool {
+
+    /** A pool of COUNT chunks, each able to hold CAPACITY characters or
+     *  indices. */
+    ChunkPool(int count, int capacity) {
+        _free = new Chunk[count];
+        for (int i = 0; i < count; i += 1) {
+            _free[i] = new Chunk(this, capacity);
+            _free[i].setFree(true);
+        }
+        _size = count;
+    }
+
+    /** Return a free chunk, waiting for one to be released if there is
+     *  none. */
+    synchronized Chunk take() throws InterruptedException {
+        while (_size == 0) {
+            wait();
+        }
+        _size -= 1;
+        Chunk result = _free[_size];
+        _free[_size] = null;
+        result.setFree(false);
+        return result;
+    }
+
+    /** Return a free chunk, or null if there is none. */
+    synchronized Chunk poll() {
+        if (_size == 0) {
+            return null;
+        }
+        _size -= 1;
+        Chunk result = _free[_size];
+        _free[_size] = null;
+        result.setFree(false);
+        return result;
+    }
+
+    /** Return the number of free chunks. */
+    synchronized int available() {
+        return _size;
+    }
+
+    /** Return CHUNK, which belongs to me, to the free list. */
+    synchronized void release(Chunk chunk) {
+        if (chunk.isFree()) {
+            throw new IllegalStateException("chunk released twice");
+        }
+        chunk.setFree(true);
+        _free[_size] = chunk;
+        _size += 1;
+        notify();
+    }
+
+    /** Free chunks, in _free[0 .. _size-1]. */
+    private final Chunk[] _free;
+
+    /** Number of free chunks. */
+    private int _size;
+}
@@ -0,0 +1,288 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A minimal writer of Java class files, sufficient for classes whose
+ *  methods contain straight-line code.  Since such methods have no
+ *  branches, they need no stack map frames.
+ *  @author Zachary Zhang
+ */
+class ClassBuilder {
+
+    /** Access flags. */
+    static final int ACC_PRIVATE = 0x0002, ACC_STATIC = 0x0008,
+        ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    /** Opcodes. */
+    static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+        LDC_W = 0x13, ILOAD = 0x15, ALOAD = 0x19, IALOAD = 0x2e,
+        AALOAD = 0x32, ISTORE = 0x36, ASTORE = 0x3a, IASTORE = 0x4f,
+        IADD = 0x60, IMUL = 0x68, IOR = 0x80, IRETURN = 0xac,
+        RETURN = 0xb1, GETSTATIC = 0xb2, PUTSTATIC = 0xb3,
+        GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKESPECIAL = 0xb7,
+        INVOKESTATIC = 0xb8, CHECKCAST = 0xc0;
+
+    /** Class file version written (Java 8). */
+    static final int MAJOR_VERSION = 52;
+
+    /** A builder for the class with internal name NAME whose superclass
+     *  has internal name SUPERNAME. */
+    ClassBuilder(String name, String superName) {
+        _name = name;
+        _thisIndex = classRef(name);
+        _superIndex = classRef(superName);
+    }
+
+    /** Return my internal name. */
+    String name() {
+        return _name;
+    }
+
+    /** Add a field with access flags ACCESS, name NAME, and type
+     *  descriptor DESC. */
+    void field(int access, String name, String desc) {
+        _fields.add(new int[] { access, utf8(name), utf8(desc) });
+    }
+
+    /** Return a new method with access flags ACCESS, name NAME, and type
+     *  descriptor DESC, to which code may be added. */
+    Code method(int access, String name, String desc) {
+        Code code = new Code(access, utf8(name), utf8(desc));
+        _methods.add(code);
+        return code;
+    }
+
+    /** Return the class file. */
+    byte[] toBytes() {
+        int codeName = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(_constantCount);
+            _constants.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(_thisIndex);
+            out.writeShort(_superIndex);
+            out.writeShort(0);
+            out.writeShort(_fields.size());
+            for (int[] field : _fields) {
+                out.writeShort(field[0]);
+                out.writeShort(field[1]);
+                out.writeShort(field[2]);
+                out.writeShort(0);
+            }
+            out.writeShort(_methods.size());
+            for (Code code : _methods) {
+                code.writeTo(out, codeName);
+            }
+            out.writeShort(0);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the constant-pool index of the UTF-8 constant S. */
+    int utf8(String s) {
+        String key = "U" + s;
+        Integer index = _indices.get(key);
+        if (index == null) {
+            try (DataOutputStream out = new DataOutputStream(_constants)) {
+                out.writeByte(1);
+                out.writeUTF(s);
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+            index = add(key);
+        }
+        return index;
+    }
+
+    /** Return the constant-pool index of the class with internal name
+     *  NAME. */
+    int classRef(String name) {
+        return reference(7, "C" + name, utf8(name), -1);
+    }
+
+    /** Return the constant-pool index of the string constant S. */
+    int string(String s) {
+        return reference(8, "S" + s, utf8(s), -1);
+    }
+
+    /** Return the constant-pool index of the field NAME of type DESC in
+     *  class OWNER. */
+    int fieldRef(String owner, String name, String desc) {
+        return reference(9, "F" + owner + "." + name + ":" + desc,
+                         classRef(owner), nameAndType(name, desc));
+    }
+
+    /** Return the constant-pool index of the method NAME with
+     *  descriptor DESC in class OWNER. */
+    int methodRef(String owner, String name, String desc) {
+        return reference(10, "M" + owner + "." + name + desc,
+                         classRef(owner), nameAndType(name, desc));
+    }
+
+    /** Return the constant-pool index of the name-and-type NAME, DESC. */
+    private int nameAndType(String name, String desc) {
+        return reference(12, "N" + name + ":" + desc, utf8(name),
+                         utf8(desc));
+    }
+
+    /** Return the constant-pool index of the constant identified by KEY
+     *  with tag TAG and one or two (if B >= 0) index operands A and B,
+     *  adding it if necessary. */
+    private int reference(int tag, String key, int a, int b) {
+        Integer index = _indices.get(key);
+        if (index == null) {
+            _constants.write(tag);
+            writeShort(_constants, a);
+            if (b >= 0) {
+                writeShort(_constants, b);
+            }
+            index = add(key);
+        }
+        return index;
+    }
+
+    /** Record the constant just written as KEY, returning its index. */
+    private int add(String key) {
+        int index = _constantCount;
+        _constantCount += 1;
+        if (_constantCount > 0xffff) {
+            throw error("too many constants in generated class");
+        }
+        _indices.put(key, index);
+        return index;
+    }
+
+    /** Write the two-byte value V to OUT. */
+    private static void writeShort(ByteArrayOutputStream out, int v) {
+        out.write(v >> 8);
+        out.write(v);
+    }
+
+    /** The code of a method, added to one instruction at a time. */
+    final class Code {
+
+        /** A method with access flags ACCESS and name and type descriptor
+         *  constant-pool indices NAME and DESC. */
+        Code(int access, int name, int desc) {
+            _access = access;
+            _nameIndex = name;
+            _descIndex = desc;
+        }
+
+        /** Add the instruction OPCODE with no operands and return
+         *  this. */
+        Code op(int opcode) {
+            _code.write(opcode);
+            return this;
+        }
+
+        /** Add the instruction OPCODE with the local-variable operand
+         *  VAR, and return this. */
+        Code local(int opcode, int var) {
+            if (var > 0xff) {
+                throw error("too many locals in generated method");
+            }
+            _code.write(opcode);
+            _code.write(var);
+            _maxLocals = Math.max(_maxLocals, var + 1);
+            return this;
+        }
+
+        /** Add the instruction OPCODE with the two-byte constant-pool
+         *  operand INDEX, and return this. */
+        Code ref(int opcode, int index) {
+            _code.write(opcode);
+            writeShort(_code, index);
+            return this;
+        }
+
+        /** Add an instruction pushing the int constant V and return
+         *  this. */
+        Code push(int v) {
+            if (v >= 0 && v <= 5) {
+                _code.write(ICONST_0 + v);
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                _code.write(BIPUSH);
+                _code.write(v);
+            } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+                _code.write(SIPUSH);
+                writeShort(_code, v);
+            } else {
+                throw error("constant too large for generated code");
+            }
+            return this;
+        }
+
+        /** Declare that my operand stack never holds more than DEPTH
+         *  values and my locals include slots 0 .. LOCALS-1, and return
+         *  this. */
+        Code limits(int depth, int locals) {
+            _maxStack = depth;
+            _maxLocals = Math.max(_maxLocals, locals);
+            return this;
+        }
+
+        /** Write me to OUT as a method whose Code attribute's name is
+         *  constant CODENAME. */
+        void writeTo(DataOutputStream out, int codeName) throws IOException {
+            out.writeShort(_access);
+            out.writeShort(_nameIndex);
+            out.writeShort(_descIndex);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + _code.size());
+            out.writeShort(_maxStack);
+            out.writeShort(_maxLocals);
+            out.writeInt(_code.size());
+            _code.writeTo(out);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        /** Access flags. */
+        private final int _access;
+        /** Constant-pool indices of my name and descriptor. */
+        private final int _nameIndex, _descIndex;
+        /** Maximum operand stack depth. */
+        private int _maxStack;
+        /** Number of local variable slots. */
+        private int _maxLocals;
+        /** Instructions. */
+        private final ByteArrayOutputStream _code =
+            new ByteArrayOutputStream();
+    }
+
+    /** My internal name. */
+    private final String _name;
+
+    /** Constant-pool indices of my class and superclass. */
+    private final int _thisIndex, _superIndex;
+
+    /** Constant-pool entries, in the class-file format. */
+    private final ByteArrayOutputStream _constants =
+        new ByteArrayOutputStream();
+
+    /** One more than the index of the last constant. */
+    private int _constantCount = 1;
+
+    /** Maps descriptions of constants to their indices. */
+    private final HashMap<String, Integer> _indices = new HashMap<>();
+
+    /** Fields, each as access flags and name and descriptor indices. */
+    private final ArrayList<int[]> _fields = new ArrayList<>();
+
+    /** Methods. */
+    private final ArrayList<Code> _methods = new ArrayList<>();
+}
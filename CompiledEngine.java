@@ -0,0 +1,391 @@
+package enigma;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import enigma.ClassBuilder.Code;
+
+import static enigma.ClassBuilder.*;
+import static enigma.EnigmaException.*;
+
+/** An engine whose conversion method is generated for one configured
+ *  machine, or for several machines in series.  compile produces, as a
+ *  hidden class, a subclass of this class whose convert(int) is a single
+ *  straight-line method: the stepping rule is unrolled for the machines'
+ *  exact rotor counts and pawl placement (with notch and advance tables
+ *  standing in for the comparisons and branches), the rotor chains are
+ *  unrolled, and the substitution tables are static final fields, so
+ *  that the JIT sees constants and no calls.  Between machines in
+ *  series, one machine's inverse plugboard and the next one's plugboard
+ *  are fused into a single table.  Generated classes are cached by the
+ *  rotors' wirings, notches, and placement and by the plugboards, so
+ *  machines that differ only in their rotor settings share a class.
+ *  @author Zachary Zhang
+ */
+abstract class CompiledEngine extends Engine {
+
+    /** Return a compiled engine with the rotors, plugboard, and current
+     *  rotor settings of M, which must have had its rotors and plugboard
+     *  set.  M itself is not changed by my conversions. */
+    static CompiledEngine compile(Machine M) {
+        return compile(Collections.singletonList(M));
+    }
+
+    /** Return a compiled engine that converts each character by each of
+     *  the machines in STAGES in turn, stepping them all once per
+     *  character.  The machines must share an alphabet and have had their
+     *  rotors and plugboards set; they are not changed by my conversions.
+     *  My settings are those of the machines' slots, in order. */
+    static CompiledEngine compile(List<Machine> stages) {
+        if (stages.isEmpty()) {
+            throw error("no machines to compile");
+        }
+        Alphabet alpha = stages.get(0).alphabet();
+        int n = 0;
+        for (Machine M : stages) {
+            if (!M.alphabet().toString().equals(alpha.toString())) {
+                throw error("machines have different alphabets");
+            }
+            if (M.plugboard() == null) {
+                throw error("plugboard not set");
+            }
+            n += M.numRotors();
+        }
+        String key = key(stages);
+        MethodHandle constructor = CACHE.get(key);
+        if (constructor == null) {
+            constructor = define(stages);
+            CACHE.put(key, constructor);
+        }
+        CompiledEngine result;
+        try {
+            result = (CompiledEngine) constructor.invoke();
+        } catch (Throwable excp) {
+            throw error("could not instantiate compiled engine: %s", excp);
+        }
+        result._alphabet = alpha;
+        int[] positions = new int[n];
+        int slot = 0;
+        for (Machine M : stages) {
+            for (int k = 0; k < M.numRotors(); k += 1) {
+                positions[slot] = M.rotor(k).setting();
+                slot += 1;
+            }
+        }
+        result.setPositions(positions);
+        return result;
+    }
+
+    /** Return the cache of compiled classes' constructors. */
+    static LruCache<String, MethodHandle> cache() {
+        return CACHE;
+    }
+
+    @Override
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return a copy of the current settings of my rotors, indexed by
+     *  slot. */
+    int[] positions() {
+        int[] result = new int[numRotors()];
+        store(result);
+        return result;
+    }
+
+    /** Set the settings of my rotors to POSITIONS, indexed by slot. */
+    void setPositions(int[] positions) {
+        if (positions.length != numRotors()) {
+            throw error("wrong number of rotor positions");
+        }
+        for (int p : positions) {
+            if (p < 0 || p >= _alphabet.size()) {
+                throw error("rotor position out of range");
+            }
+        }
+        load(positions);
+    }
+
+    /** Return the number of rotor slots I have. */
+    abstract int numRotors();
+
+    /** Set my rotor settings from POSITIONS without checking them. */
+    abstract void load(int[] positions);
+
+    /** Copy my rotor settings into POSITIONS. */
+    abstract void store(int[] positions);
+
+    /** Return a string that identifies everything about STAGES that a
+     *  compiled class depends on. */
+    private static String key(List<Machine> stages) {
+        int size = stages.get(0).alphabet().size();
+        StringBuilder key = new StringBuilder();
+        key.append((char) size);
+        for (Machine M : stages) {
+            key.append('|');
+            for (int k = 0; k < M.numRotors(); k += 1) {
+                Rotor rotor = M.rotor(k);
+                key.append(rotor.rotates() ? 'R' : 'F');
+                for (int w : rotor.wiring()) {
+                    key.append((char) w);
+                }
+                for (int p = 0; p < size; p += 1) {
+                    key.append(rotor.atNotch(p) ? '1' : '0');
+                }
+            }
+            key.append('P');
+            for (int w : M.plugboard().table()) {
+                key.append((char) w);
+            }
+        }
+        return key.toString();
+    }
+
+    /** Generate and define a subclass specialized for STAGES, returning
+     *  its constructor.  The plugboard tables between stages are fused:
+     *  each maps the output of one stage's rotors through its inverse
+     *  plugboard and the next stage's plugboard in one lookup. */
+    private static MethodHandle define(List<Machine> stages) {
+        int size = stages.get(0).alphabet().size();
+        int count = stages.size();
+        int[] firsts = new int[count + 1];
+        for (int s = 0; s < count; s += 1) {
+            firsts[s + 1] = firsts[s] + stages.get(s).numRotors();
+        }
+        int n = firsts[count];
+        ClassBuilder cls = new ClassBuilder(GENERATED, BASE);
+        ArrayList<Object> tables = new ArrayList<>();
+        int[] step = new int[2 * size];
+        for (int p = 0; p < size; p += 1) {
+            step[p] = p;
+            step[size + p] = (p + 1) % size;
+        }
+        tables.add(step);
+        tables.add(stages.get(0).plugboard().table().clone());
+        for (int s = 0; s < count; s += 1) {
+            int[] out = stages.get(s).plugboard().inverseTable().clone();
+            if (s + 1 < count) {
+                int[] next = stages.get(s + 1).plugboard().table();
+                for (int x = 0; x < size; x += 1) {
+                    out[x] = next[out[x]];
+                }
+            }
+            tables.add(out);
+        }
+        boolean[] rotates = new boolean[n];
+        for (int s = 0; s < count; s += 1) {
+            Machine M = stages.get(s);
+            for (int k = 0; k < M.numRotors(); k += 1) {
+                Rotor rotor = M.rotor(k);
+                rotates[firsts[s] + k] = rotor.rotates();
+                tables.add(TableEngine.shiftedTable(rotor.wiring(), size));
+                tables.add(TableEngine.shiftedTable(rotor.inverseWiring(),
+                                                    size));
+                int[] notches = new int[size];
+                for (int p = 0; p < size; p += 1) {
+                    notches[p] = rotor.atNotch(p) ? size : 0;
+                }
+                tables.add(notches);
+                cls.field(ACC_PRIVATE, position(firsts[s] + k), "I");
+            }
+        }
+        for (int t = 0; t < tables.size(); t += 1) {
+            cls.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, table(t), "[I");
+        }
+        defineClassInitializer(cls, tables.size());
+        defineConstructor(cls);
+        defineConvert(cls, rotates, firsts, size);
+        defineAccessors(cls, n);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(cls.toBytes(),
+                                                tables.toArray(), true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                                          MethodType.methodType(void.class));
+        } catch (IllegalAccessException | NoSuchMethodException excp) {
+            throw error("could not define compiled engine: %s", excp);
+        }
+    }
+
+    /** Add to CLS a class initializer that sets its COUNT table fields
+     *  from the class data. */
+    private static void defineClassInitializer(ClassBuilder cls,
+                                               int count) {
+        Code code = cls.method(ACC_STATIC, "<clinit>", "()V");
+        code.ref(INVOKESTATIC,
+                 cls.methodRef(HANDLES, "lookup", "()L" + LOOKUP + ";"))
+            .ref(LDC_W, cls.string("_"))
+            .ref(LDC_W, cls.classRef("[Ljava/lang/Object;"))
+            .ref(INVOKESTATIC,
+                 cls.methodRef(HANDLES, "classData",
+                               "(L" + LOOKUP + ";Ljava/lang/String;"
+                               + "Ljava/lang/Class;)Ljava/lang/Object;"))
+            .ref(CHECKCAST, cls.classRef("[Ljava/lang/Object;"))
+            .local(ASTORE, 0);
+        for (int t = 0; t < count; t += 1) {
+            code.local(ALOAD, 0).push(t).op(AALOAD)
+                .ref(CHECKCAST, cls.classRef("[I"))
+                .ref(PUTSTATIC, cls.fieldRef(cls.name(), table(t), "[I"));
+        }
+        code.op(RETURN).limits(3, 1);
+    }
+
+    /** Add to CLS a constructor with no arguments. */
+    private static void defineConstructor(ClassBuilder cls) {
+        cls.method(0, "<init>", "()V")
+            .local(ALOAD, 0)
+            .ref(INVOKESPECIAL, cls.methodRef(BASE, "<init>", "()V"))
+            .op(RETURN).limits(1, 1);
+    }
+
+    /** Add to CLS the method convert(int) for machines with an alphabet
+     *  of SIZE characters whose slots, numbered consecutively across the
+     *  machines, rotate where ROTATES is true, and in which the slots of
+     *  machine S are FIRSTS[S] .. FIRSTS[S + 1] - 1.  Local 1 holds the
+     *  character being converted, local 2 + K holds the setting of slot
+     *  K, and local 2 + N + I holds the notch-table entry (SIZE or 0)
+     *  telling whether slot I + 1 is at a notch, where N is the number of
+     *  slots. */
+    private static void defineConvert(ClassBuilder cls, boolean[] rotates,
+                                      int[] firsts, int size) {
+        int n = rotates.length, count = firsts.length - 1;
+        Code code = cls.method(0, "convert", "(I)I");
+        for (int k = 0; k < n; k += 1) {
+            code.local(ALOAD, 0).ref(GETFIELD, field(cls, position(k)))
+                .local(ISTORE, 2 + k);
+        }
+        for (int s = 0; s < count; s += 1) {
+            int first = firsts[s], last = firsts[s + 1] - 1;
+            for (int i = first; i < last; i += 1) {
+                if (rotates[i]) {
+                    code.ref(GETSTATIC, table(cls, notches(count, i + 1)))
+                        .local(ILOAD, 2 + i + 1).op(IALOAD)
+                        .local(ISTORE, 2 + n + i);
+                }
+            }
+            for (int i = first; i <= last; i += 1) {
+                if (!rotates[i]) {
+                    continue;
+                }
+                code.ref(GETSTATIC, table(cls, STEP));
+                if (i == last) {
+                    code.push(size);
+                } else {
+                    code.local(ILOAD, 2 + n + i);
+                    if (i > first && rotates[i - 1]) {
+                        code.local(ILOAD, 2 + n + i - 1).op(IOR);
+                    }
+                }
+                code.local(ILOAD, 2 + i).op(IADD).op(IALOAD)
+                    .local(ISTORE, 2 + i)
+                    .local(ALOAD, 0).local(ILOAD, 2 + i)
+                    .ref(PUTFIELD, field(cls, position(i)));
+            }
+        }
+        code.ref(GETSTATIC, table(cls, PLUGBOARDS)).local(ILOAD, 1)
+            .op(IALOAD).local(ISTORE, 1);
+        for (int s = 0; s < count; s += 1) {
+            int first = firsts[s], last = firsts[s + 1] - 1;
+            for (int k = last; k >= first; k -= 1) {
+                substitute(cls, code, forward(count, k), k, size);
+            }
+            for (int k = first + 1; k <= last; k += 1) {
+                substitute(cls, code, backward(count, k), k, size);
+            }
+            code.ref(GETSTATIC, table(cls, PLUGBOARDS + s + 1))
+                .local(ILOAD, 1).op(IALOAD).local(ISTORE, 1);
+        }
+        code.local(ILOAD, 1).op(IRETURN).limits(4, 2 + 2 * n);
+    }
+
+    /** Add to CODE, part of CLS, the replacement of local 1 by its image
+     *  under table number TABLE at the setting of slot K, with an
+     *  alphabet of SIZE characters. */
+    private static void substitute(ClassBuilder cls, Code code, int table,
+                                   int k, int size) {
+        code.ref(GETSTATIC, table(cls, table)).local(ILOAD, 2 + k)
+            .push(size).op(IMUL).local(ILOAD, 1).op(IADD).op(IALOAD)
+            .local(ISTORE, 1);
+    }
+
+    /** Add to CLS the methods numRotors, load, and store for N slots. */
+    private static void defineAccessors(ClassBuilder cls, int n) {
+        cls.method(0, "numRotors", "()I").push(n).op(IRETURN).limits(1, 1);
+        Code load = cls.method(0, "load", "([I)V");
+        Code store = cls.method(0, "store", "([I)V");
+        for (int k = 0; k < n; k += 1) {
+            load.local(ALOAD, 0).local(ALOAD, 1).push(k).op(IALOAD)
+                .ref(PUTFIELD, field(cls, position(k)));
+            store.local(ALOAD, 1).push(k).local(ALOAD, 0)
+                .ref(GETFIELD, field(cls, position(k))).op(IASTORE);
+        }
+        load.op(RETURN).limits(3, 2);
+        store.op(RETURN).limits(3, 2);
+    }
+
+    /** Return the name of the field holding the setting of slot K. */
+    private static String position(int k) {
+        return "p" + k;
+    }
+
+    /** Return the name of the field holding table number T. */
+    private static String table(int t) {
+        return "t" + t;
+    }
+
+    /** Return the constant-pool index in CLS of its field NAME. */
+    private static int field(ClassBuilder cls, String name) {
+        return cls.fieldRef(cls.name(), name, "I");
+    }
+
+    /** Return the constant-pool index in CLS of table field T. */
+    private static int table(ClassBuilder cls, int t) {
+        return cls.fieldRef(cls.name(), table(t), "[I");
+    }
+
+    /** Return the index among the class data of the forward table of
+     *  slot K in a class compiled from COUNT machines. */
+    private static int forward(int count, int k) {
+        return PLUGBOARDS + count + 1 + 3 * k;
+    }
+
+    /** Return the index among the class data of the backward table of
+     *  slot K in a class compiled from COUNT machines. */
+    private static int backward(int count, int k) {
+        return forward(count, k) + 1;
+    }
+
+    /** Return the index among the class data of the notch table of slot
+     *  K in a class compiled from COUNT machines. */
+    private static int notches(int count, int k) {
+        return forward(count, k) + 2;
+    }
+
+    /** Indices of the tables among the class data: the advance table,
+     *  and then the COUNT + 1 plugboard tables of COUNT machines (the
+     *  first plugboard, the fused tables between machines, and the last
+     *  inverse plugboard), followed by the tables of each slot. */
+    private static final int STEP = 0, PLUGBOARDS = 1;
+
+    /** Internal names of this class, the generated class, and the
+     *  classes the generated class initializer calls. */
+    private static final String BASE = "enigma/CompiledEngine",
+        GENERATED = "enigma/CompiledEngine$Generated",
+        HANDLES = "java/lang/invoke/MethodHandles",
+        LOOKUP = "java/lang/invoke/MethodHandles$Lookup";
+
+    /** Maximum number of compiled classes retained. */
+    static final int CACHE_SIZE = 64;
+
+    /** Constructors of compiled classes, keyed as by key. */
+    private static final LruCache<String, MethodHandle> CACHE =
+        new LruCache<>(CACHE_SIZE);
+
+    /** My alphabet. */
+    private Alphabet _alphabet;
+}
@@ -0,0 +1,317 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static enigma.EnigmaException.*;
+
+/** Lists the admissible placements of a crib against ciphertexts.
+ *  When no reflector has a fixed point, every conversion is a
+ *  permutation without fixed points, and no plaintext character ever
+ *  enciphers to itself, so a crib cannot lie at an offset where any of
+ *  its characters coincides with the ciphertext character beneath it.
+ *  Otherwise every offset is admissible.  The offsets are found for
+ *  all positions of a ciphertext at once by sliding per-character bitsets
+ *  of the ciphertext, and the survivors are ranked by the number of
+ *  independent loops in their menus (the graph joining each crib
+ *  character to the ciphertext character beneath it), since placements
+ *  with more loops constrain rotor trials more tightly.
+ *  @author Zachary Zhang
+ */
+public final class CribPlacer {
+
+    /** Print the ranked placements of a crib in intercepts.  ARGS are
+     *      CONFIG CRIB FILE... [--threads N] [--top N]
+     *  where CONFIG is a configuration file supplying the alphabet, CRIB
+     *  is the crib, and each line of each FILE is one intercept (blanks
+     *  ignored).  Prints at most N (default 20) placements, best first,
+     *  each as FILE:LINE, offset, and number of menu loops, using N
+     *  threads (default: the number of processors).  Exits normally on
+     *  success; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            ArrayList<String> files = new ArrayList<>();
+            int threads = Runtime.getRuntime().availableProcessors();
+            int top = DEFAULT_TOP;
+            for (int i = 2; i < args.length; i += 1) {
+                if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = parseInt(args[i + 1]);
+                    i += 1;
+                } else if (args[i].equals("--top") && i + 1 < args.length) {
+                    top = parseInt(args[i + 1]);
+                    i += 1;
+                } else {
+                    files.add(args[i]);
+                }
+            }
+            if (files.isEmpty() || threads <= 0) {
+                throw error("usage: CribPlacer CONFIG CRIB FILE... "
+                            + "[--threads N] [--top N]");
+            }
+            Machine M;
+            try (Scanner config = new Scanner(new File(args[0]))) {
+                M = new Main(config, null, null).readConfig();
+            } catch (IOException excp) {
+                throw error("could not read %s", args[0]);
+            }
+            Alphabet alpha = M.alphabet();
+            ArrayList<int[]> intercepts = new ArrayList<>();
+            ArrayList<String> names = new ArrayList<>();
+            for (String file : files) {
+                read(new File(file), alpha, intercepts, names);
+            }
+            CribPlacer placer =
+                new CribPlacer(alpha, args[1], M.selfEncrypting());
+            List<Placement> placements = placer.placeAll(intercepts, threads);
+            System.out.printf("%d admissible placements in %d intercepts%n",
+                              placements.size(), intercepts.size());
+            for (int i = 0; i < Math.min(top, placements.size()); i += 1) {
+                Placement p = placements.get(i);
+                System.out.printf("%s %d %d%n", names.get(p.intercept),
+                                  p.offset, p.loops);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Add each non-blank line of FILE, as indices in ALPHA, to
+     *  INTERCEPTS, and its name, as FILE:LINE, to NAMES. */
+    private static void read(File file, Alphabet alpha,
+                             List<int[]> intercepts, List<String> names) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath());
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        for (int n = 0; n < lines.size(); n += 1) {
+            String line = lines.get(n).replaceAll("\\s", "");
+            if (line.isEmpty()) {
+                continue;
+            }
+            intercepts.add(indices(alpha, line));
+            names.add(file + ":" + (n + 1));
+        }
+    }
+
+    /** Return the indices in ALPHA of the characters of S. */
+    private static int[] indices(Alphabet alpha, String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i += 1) {
+            if (!alpha.contains(s.charAt(i))) {
+                throw error("character %c not in alphabet", s.charAt(i));
+            }
+            result[i] = alpha.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return S as an integer. */
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** A placer for the non-empty CRIB, whose characters are in ALPHA,
+     *  against machines whose reflectors have no fixed points. */
+    CribPlacer(Alphabet alpha, String crib) {
+        this(alpha, crib, false);
+    }
+
+    /** A placer for the non-empty CRIB, whose characters are in ALPHA,
+     *  against machines that may, if SELFENCRYPTING, convert characters
+     *  to themselves. */
+    CribPlacer(Alphabet alpha, String crib, boolean selfEncrypting) {
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        }
+        _alphabet = alpha;
+        _crib = indices(alpha, crib);
+        _selfEncrypting = selfEncrypting;
+    }
+
+    /** Return my crib, as alphabet indices. */
+    int[] crib() {
+        return _crib.clone();
+    }
+
+    /** Return the bitset (bit I of word I / 64) of the offsets in CIPHER
+     *  at which my crib may lie. */
+    long[] admissible(int[] cipher) {
+        int n = cipher.length - _crib.length + 1;
+        if (n <= 0) {
+            return new long[0];
+        }
+        if (_selfEncrypting) {
+            long[] all = new long[(n + 63) >>> 6];
+            Arrays.fill(all, -1L);
+            if ((n & 63) != 0) {
+                all[all.length - 1] = (1L << n) - 1;
+            }
+            return all;
+        }
+        int words = (cipher.length + 63) >>> 6;
+        long[][] where = new long[_alphabet.size()][];
+        for (int c : _crib) {
+            where[c] = new long[words];
+        }
+        for (int i = 0; i < cipher.length; i += 1) {
+            long[] bits = where[cipher[i]];
+            if (bits != null) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        long[] conflicts = new long[(n + 63) >>> 6];
+        for (int j = 0; j < _crib.length; j += 1) {
+            orShifted(conflicts, where[_crib[j]], j);
+        }
+        for (int w = 0; w < conflicts.length; w += 1) {
+            conflicts[w] = ~conflicts[w];
+        }
+        if ((n & 63) != 0) {
+            conflicts[conflicts.length - 1] &= (1L << n) - 1;
+        }
+        return conflicts;
+    }
+
+    /** Set each bit I of DST for which bit I + SHIFT of SRC is set. */
+    private static void orShifted(long[] dst, long[] src, int shift) {
+        int words = shift >>> 6, bits = shift & 63;
+        for (int w = 0; w < dst.length && w + words < src.length; w += 1) {
+            long v = src[w + words] >>> bits;
+            if (bits != 0 && w + words + 1 < src.length) {
+                v |= src[w + words + 1] << (64 - bits);
+            }
+            dst[w] |= v;
+        }
+    }
+
+    /** Return the number of independent loops in the menu of my crib at
+     *  OFFSET in CIPHER: its edges less its vertices plus its connected
+     *  components. */
+    int loops(int[] cipher, int offset) {
+        int[] parent = new int[_alphabet.size()];
+        boolean[] seen = new boolean[parent.length];
+        for (int c = 0; c < parent.length; c += 1) {
+            parent[c] = c;
+        }
+        int vertices = 0, components = 0;
+        for (int j = 0; j < _crib.length; j += 1) {
+            int a = _crib[j], b = cipher[offset + j];
+            for (int v : new int[] { a, b }) {
+                if (!seen[v]) {
+                    seen[v] = true;
+                    vertices += 1;
+                    components += 1;
+                }
+            }
+            int ra = find(parent, a), rb = find(parent, b);
+            if (ra != rb) {
+                parent[ra] = rb;
+                components -= 1;
+            }
+        }
+        return _crib.length - vertices + components;
+    }
+
+    /** Return the representative of V's set in the union-find forest
+     *  PARENT, compressing the path. */
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    /** Return the admissible placements of my crib in CIPHER, which is
+     *  intercept number INTERCEPT, best first. */
+    List<Placement> place(int[] cipher, int intercept) {
+        ArrayList<Placement> result = new ArrayList<>();
+        long[] offsets = admissible(cipher);
+        for (int w = 0; w < offsets.length; w += 1) {
+            for (long bits = offsets[w]; bits != 0; bits &= bits - 1) {
+                int offset = (w << 6) + Long.numberOfTrailingZeros(bits);
+                result.add(new Placement(intercept, offset,
+                                         loops(cipher, offset)));
+            }
+        }
+        result.sort(RANKING);
+        return result;
+    }
+
+    /** Return the admissible placements of my crib in all of INTERCEPTS,
+     *  best first, finding them with THREADS threads. */
+    List<Placement> placeAll(List<int[]> intercepts, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<ForkJoinTask<List<Placement>>> tasks =
+                new ArrayList<>();
+            for (int i = 0; i < intercepts.size(); i += 1) {
+                int intercept = i;
+                tasks.add(pool.submit(() ->
+                                      place(intercepts.get(intercept),
+                                            intercept)));
+            }
+            ArrayList<Placement> result = new ArrayList<>();
+            for (ForkJoinTask<List<Placement>> task : tasks) {
+                result.addAll(task.join());
+            }
+            result.sort(RANKING);
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** A possible position of a crib. */
+    static final class Placement {
+        /** The crib at OFFSET in intercept number INTERCEPT, with LOOPS
+         *  loops in its menu. */
+        Placement(int intercept, int offset, int loops) {
+            this.intercept = intercept;
+            this.offset = offset;
+            this.loops = loops;
+        }
+
+        /** Index of the intercept. */
+        final int intercept;
+        /** Offset of the crib's first character in the intercept. */
+        final int offset;
+        /** Number of independent loops in the menu. */
+        final int loops;
+    }
+
+    /** Orders placements best first: most loops, then earliest. */
+    static final Comparator<Placement> RANKING =
+        Comparator.<Placement>comparingInt(p -> -p.loops)
+        .thenComparingInt(p -> p.intercept)
+        .thenComparingInt(p -> p.offset);
+
+    /** Default number of placements printed. */
+    static final int DEFAULT_TOP = 20;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** My crib, as alphabet indices. */
+    private final int[] _crib;
+
+    /** True iff the machines placed against may convert characters to
+     *  themselves. */
+    private final boolean _selfEncrypting;
+}
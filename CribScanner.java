@@ -0,0 +1,216 @@
+package enigma;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A streaming scanner for any of a set of cribs in a text given as
+ *  alphabet indices, using the Aho-Corasick automaton compiled to a
+ *  complete transition table, so that each character costs one table
+ *  lookup regardless of the number of cribs.  The scanner's state
+ *  carries over from one call to the next, so a text may be presented
+ *  in pieces and matches that span pieces are found.
+ *  @author Zachary Zhang
+ */
+class CribScanner {
+
+    /** A scanner for CRIBS, which must be non-empty strings of characters
+     *  in ALPHA. */
+    CribScanner(Alphabet alpha, List<String> cribs) {
+        if (cribs.isEmpty()) {
+            throw error("no cribs");
+        }
+        _alphabet = alpha;
+        _size = alpha.size();
+        _cribs = new ArrayList<>(cribs);
+        int maxStates = 1;
+        for (String crib : cribs) {
+            if (crib.isEmpty()) {
+                throw error("empty crib");
+            }
+            maxStates += crib.length();
+        }
+        int[] delta = new int[maxStates * _size];
+        Arrays.fill(delta, -1);
+        int[] match = new int[maxStates];
+        Arrays.fill(match, -1);
+        int states = 1;
+        for (int i = 0; i < cribs.size(); i += 1) {
+            String crib = cribs.get(i);
+            int s = 0;
+            for (int j = 0; j < crib.length(); j += 1) {
+                char ch = crib.charAt(j);
+                if (!alpha.contains(ch)) {
+                    throw error("crib character %c not in alphabet", ch);
+                }
+                int t = s * _size + alpha.toInt(ch);
+                if (delta[t] < 0) {
+                    delta[t] = states;
+                    states += 1;
+                }
+                s = delta[t];
+            }
+            if (match[s] < 0) {
+                match[s] = i;
+            }
+        }
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < _size; c += 1) {
+            if (delta[c] < 0) {
+                delta[c] = 0;
+            } else {
+                queue.add(delta[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.remove();
+            if (match[s] < 0) {
+                match[s] = match[fail[s]];
+            }
+            for (int c = 0; c < _size; c += 1) {
+                int t = s * _size + c;
+                if (delta[t] < 0) {
+                    delta[t] = delta[fail[s] * _size + c];
+                } else {
+                    fail[delta[t]] = delta[fail[s] * _size + c];
+                    queue.add(delta[t]);
+                }
+            }
+        }
+        _delta = Arrays.copyOf(delta, states * _size);
+        _match = Arrays.copyOf(match, states);
+        for (int t = 0; t < _delta.length; t += 1) {
+            int next = _delta[t];
+            _delta[t] = _match[next] >= 0 ? ~(next * _size) : next * _size;
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my cribs. */
+    List<String> cribs() {
+        return _cribs;
+    }
+
+    /** Scan TEXT[START .. END-1], stopping just after the first character
+     *  that completes an occurrence of a crib.  Return the index in TEXT
+     *  following that character, or -1 if no crib occurrence ends in
+     *  the range.  The scan may be resumed from the returned index. */
+    int scan(int[] text, int start, int end) {
+        int[] delta = _delta;
+        int state = _state;
+        for (int i = start; i < end; i += 1) {
+            state = delta[state + text[i]];
+            if (state < 0) {
+                found(~state, i + 1 - start);
+                return i + 1;
+            }
+        }
+        _consumed += end - start;
+        _state = state;
+        return -1;
+    }
+
+    /** Convert MSG[START .. END-1] in place with ENGINE, scanning each
+     *  converted character as by scan, and stopping just after the first
+     *  character that completes a crib.  Return the index in MSG
+     *  following that character, or -1 if no crib occurrence ends in the
+     *  range; characters after the returned index are not converted and
+     *  ENGINE is not advanced for them. */
+    int convertAndScan(Engine engine, int[] msg, int start, int end) {
+        int[] delta = _delta;
+        int state = _state;
+        for (int i = start; i < end; i += 1) {
+            int c = engine.convert(msg[i]);
+            msg[i] = c;
+            state = delta[state + c];
+            if (state < 0) {
+                found(~state, i + 1 - start);
+                return i + 1;
+            }
+        }
+        _consumed += end - start;
+        _state = state;
+        return -1;
+    }
+
+    /** Record a match in STATE after consuming N more characters. */
+    private void found(int state, int n) {
+        _state = state;
+        _consumed += n;
+        _lastCrib = _match[state / _size];
+        _lastEnd = _consumed;
+        _hits += 1;
+    }
+
+    /** Return the number of crib occurrences found since the last
+     *  reset. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the index in cribs() of the crib found most recently, or -1
+     *  if there has been none since the last reset.  When several cribs
+     *  end at the same character, this is the longest of them. */
+    int lastCrib() {
+        return _lastCrib;
+    }
+
+    /** Return the number of characters scanned since the last reset up to
+     *  and including the end of the crib found most recently. */
+    long lastEnd() {
+        return _lastEnd;
+    }
+
+    /** Return the number of characters scanned since the last reset. */
+    long consumed() {
+        return _consumed;
+    }
+
+    /** Start again at the beginning of a new text. */
+    void reset() {
+        _state = 0;
+        _consumed = _hits = _lastEnd = 0;
+        _lastCrib = -1;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** The cribs. */
+    private final List<String> _cribs;
+
+    /** Transition table: the successor of state S on character C times
+     *  the alphabet size is _delta[S * size + C], complemented if a crib
+     *  ends on entering it.  States are stored premultiplied by the
+     *  alphabet size. */
+    private final int[] _delta;
+
+    /** Indexed by state, the crib that ends on entering it, or -1. */
+    private final int[] _match;
+
+    /** Current state, premultiplied by the alphabet size. */
+    private int _state;
+
+    /** Characters scanned since the last reset. */
+    private long _consumed;
+
+    /** Crib occurrences found since the last reset. */
+    private long _hits;
+
+    /** Crib found most recently, or -1. */
+    private int _lastCrib = -1;
+
+    /** Value of _consumed at the end of the crib found most recently. */
+    private long _lastEnd;
+}
@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.MachineTest.navalMachine;
+
+/** The suite of all JUnit tests for crib scanning and placement.
+ *  @author Zachary Zhang
+ */
+public class CribTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private Alphabet alpha = new Alphabet("ABC");
+
+    /** Return the indices in ALPHA of the characters of S. */
+    private int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i += 1) {
+            result[i] = alpha.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the number of occurrences of any of CRIBS in TEXT,
+     *  counting each position at most once. */
+    private int bruteForce(String text, List<String> cribs) {
+        int count = 0;
+        for (int end = 1; end <= text.length(); end += 1) {
+            for (String crib : cribs) {
+                if (text.substring(0, end).endsWith(crib)) {
+                    count += 1;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testScannerMatchesBruteForceAcrossBuffers() {
+        Random rand = new Random(0);
+        List<String> cribs = Arrays.asList("ABA", "BAB", "CC", "ABCABC",
+                                           "A");
+        for (int n = 0; n < 20; n += 1) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 200; i += 1) {
+                text.append(alpha.toChar(rand.nextInt(3)));
+            }
+            int[] input = indices(text.toString());
+            CribScanner scanner = new CribScanner(alpha, cribs.subList(
+                0, 1 + rand.nextInt(cribs.size())));
+            int start = 0;
+            while (start < input.length) {
+                int end = Math.min(input.length, start + rand.nextInt(9));
+                int next = scanner.scan(input, start, end);
+                if (next >= 0) {
+                    String before = text.substring(0, next);
+                    assertTrue(before.endsWith(scanner.cribs()
+                                               .get(scanner.lastCrib())));
+                    assertEquals(next, scanner.lastEnd());
+                    start = next;
+                } else {
+                    start = end;
+                }
+            }
+            assertEquals(input.length, scanner.consumed());
+            assertEquals(bruteForce(text.toString(), scanner.cribs()),
+                         scanner.hits());
+        }
+    }
+
+    @Test
+    public void testConvertAndScanStopsAtFirstCrib() {
+        Machine M = navalMachine();
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        String cipher = M.convert("WEATHERFORECASTFORTODAY");
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        Alphabet upper = M.alphabet();
+        int[] msg = new int[cipher.length()];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = upper.toInt(cipher.charAt(i));
+        }
+        CribScanner scanner =
+            new CribScanner(upper, Arrays.asList("FORECAST", "WETTER"));
+        assertEquals(15, scanner.convertAndScan(M, msg, 0, msg.length));
+        assertEquals(0, scanner.lastCrib());
+        assertEquals(upper.toInt('F'), msg[7]);
+        assertEquals(upper.toInt(cipher.charAt(15)), msg[15]);
+        assertEquals(-1, scanner.convertAndScan(M, msg, 15, msg.length));
+    }
+
+    @Test
+    public void testPlacerMatchesBruteForce() {
+        Random rand = new Random(1);
+        for (int n = 0; n < 50; n += 1) {
+            int[] cipher = new int[rand.nextInt(300)];
+            for (int i = 0; i < cipher.length; i += 1) {
+                cipher[i] = rand.nextInt(3);
+            }
+            StringBuilder crib = new StringBuilder();
+            for (int j = 1 + rand.nextInt(6); j > 0; j -= 1) {
+                crib.append(alpha.toChar(rand.nextInt(3)));
+            }
+            boolean selfEncrypting = n % 2 == 1;
+            CribPlacer placer =
+                new CribPlacer(alpha, crib.toString(), selfEncrypting);
+            long[] admissible = placer.admissible(cipher);
+            for (int o = 0; o < admissible.length * 64; o += 1) {
+                boolean fits = o + crib.length() <= cipher.length;
+                for (int j = 0; fits && !selfEncrypting
+                         && j < crib.length(); j += 1) {
+                    fits = cipher[o + j] != alpha.toInt(crib.charAt(j));
+                }
+                assertEquals(fits, (admissible[o >>> 6] & (1L << o)) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void testPlacementsRankedByLoops() {
+        Alphabet upper = new Alphabet();
+        CribPlacer placer = new CribPlacer(upper, "ABAB");
+        int[] cipher = new int[] { 1, 0, 1, 0, 2, 3, 4, 5, 0 };
+        assertEquals(3, placer.loops(cipher, 0));
+        assertEquals(0, placer.loops(cipher, 4));
+        List<CribPlacer.Placement> placements = placer.placeAll(
+            Arrays.asList(cipher, new int[] { 2, 2, 2, 2 }), 2);
+        assertEquals(5, placements.size());
+        assertEquals(0, placements.get(0).intercept);
+        assertEquals(0, placements.get(0).offset);
+        assertEquals(1, placements.get(1).intercept);
+        assertEquals(2, placements.get(1).loops);
+        assertEquals(2, placements.get(2).offset);
+        assertEquals(5, placements.get(4).offset);
+    }
+
+}
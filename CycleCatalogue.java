@@ -0,0 +1,502 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static enigma.EnigmaException.*;
+
+/** A catalogue of the characteristics of every rotor order and starting
+ *  position of a configuration, in the manner of Rejewski's card
+ *  catalogue.  If P1 .. P6 are the permutations a machine performs on
+ *  the six characters after a starting position (a doubly enciphered
+ *  message key), the characteristic is the cycle lengths of the
+ *  products AD = P1 then P4, BE = P2 then P5, and CF = P3 then P6.  A
+ *  plugboard only conjugates these products, so the characteristic
+ *  depends on the rotor order and position alone, and it can be
+ *  observed from enough enciphered message keys sent with the same
+ *  starting position.
+ *
+ *  The catalogue is built in parallel, one task per rotor order, and
+ *  written as a sorted array of 64-bit entries, each a 32-bit hash of a
+ *  characteristic above a 32-bit candidate number (rotor order times
+ *  number of positions plus position), after a header that includes a
+ *  hash of the rotors' wirings and notches, so that a catalogue is
+ *  opened only for the configuration it was built from.  Lookup maps
+ *  the file and binary searches for the hash, then recomputes each
+ *  candidate's characteristic to discard hash collisions, setting up
+ *  one engine for each rotor order among the candidates.
+ *  @author Zachary Zhang
+ */
+public final class CycleCatalogue {
+
+    /** Perform the command in ARGS, one of
+     *      build CONFIG CATALOGUE [--threads N]
+     *          Write the catalogue of the configuration file CONFIG to
+     *          CATALOGUE using N threads (default: the number of
+     *          processors).
+     *      lookup CONFIG CATALOGUE --indicators FILE
+     *      lookup CONFIG CATALOGUE --signature AD/BE/CF
+     *          Print the rotor orders and positions whose characteristic
+     *          is that of the enciphered message keys in FILE (six
+     *          characters a line, blanks ignored) or that given directly,
+     *          each product as its cycle lengths separated by commas.
+     *  Exits normally on success; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("usage: CycleCatalogue build|lookup CONFIG "
+                            + "CATALOGUE ...");
+            }
+            Machine M = readConfig(new File(args[1]));
+            File file = new File(args[2]);
+            if (args[0].equals("build")) {
+                int threads = Runtime.getRuntime().availableProcessors();
+                if (args.length == 5 && args[3].equals("--threads")) {
+                    threads = parseInt(args[4]);
+                } else if (args.length != 3) {
+                    throw error("unknown option: %s", args[3]);
+                }
+                long start = System.nanoTime();
+                int distinct = build(M, file, threads);
+                System.out.printf("%d distinct characteristics in %.3f s%n",
+                                  distinct,
+                                  (System.nanoTime() - start) / 1e9);
+            } else if (args[0].equals("lookup") && args.length == 5) {
+                int[][] signature;
+                if (args[3].equals("--indicators")) {
+                    signature = fromIndicators(new File(args[4]),
+                                               M.alphabet());
+                } else if (args[3].equals("--signature")) {
+                    signature = parseSignature(args[4]);
+                } else {
+                    throw error("unknown option: %s", args[3]);
+                }
+                System.out.println("characteristic "
+                                   + formatSignature(signature));
+                CycleCatalogue catalogue = new CycleCatalogue(M, file);
+                long start = System.nanoTime();
+                List<String> found = catalogue.lookup(signature);
+                long nanos = System.nanoTime() - start;
+                for (String settings : found) {
+                    System.out.println(settings);
+                }
+                System.out.printf("%d candidates in %.1f us%n", found.size(),
+                                  nanos / 1e3);
+            } else {
+                throw error("unknown command: %s", args[0]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the machine described by the configuration file FILE. */
+    private static Machine readConfig(File file) {
+        try (Scanner config = new Scanner(file)) {
+            return new Main(config, null, null).readConfig();
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return S as an integer. */
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Return the characteristic in TEXT, in the format of main. */
+    static int[][] parseSignature(String text) {
+        String[] products = text.split("/");
+        if (products.length != 3) {
+            throw error("a characteristic has three products");
+        }
+        int[][] result = new int[3][];
+        for (int i = 0; i < 3; i += 1) {
+            String[] lengths = products[i].trim().split("[,\\s]+");
+            result[i] = new int[lengths.length];
+            for (int j = 0; j < lengths.length; j += 1) {
+                result[i][j] = parseInt(lengths[j]);
+            }
+            Arrays.sort(result[i]);
+            reverse(result[i]);
+        }
+        return result;
+    }
+
+    /** Return SIGNATURE in the format read by parseSignature. */
+    static String formatSignature(int[][] signature) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < signature.length; i += 1) {
+            if (i > 0) {
+                out.append('/');
+            }
+            for (int j = 0; j < signature[i].length; j += 1) {
+                if (j > 0) {
+                    out.append(',');
+                }
+                out.append(signature[i][j]);
+            }
+        }
+        return out.toString();
+    }
+
+    /** Reverse the elements of A. */
+    private static void reverse(int[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i += 1, j -= 1) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /** Return the characteristic of the enciphered message keys in FILE,
+     *  whose characters are in ALPHA. */
+    static int[][] fromIndicators(File file, Alphabet alpha) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath());
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        int size = alpha.size();
+        int[][] products = new int[3][size];
+        for (int[] p : products) {
+            Arrays.fill(p, -1);
+        }
+        for (String line : lines) {
+            String key = line.replaceAll("\\s", "");
+            if (key.isEmpty()) {
+                continue;
+            }
+            if (key.length() != 6) {
+                throw error("message key %s is not six characters", key);
+            }
+            for (int i = 0; i < 3; i += 1) {
+                char from = key.charAt(i), to = key.charAt(i + 3);
+                if (!alpha.contains(from) || !alpha.contains(to)) {
+                    throw error("message key %s not in alphabet", key);
+                }
+                int a = alpha.toInt(from), b = alpha.toInt(to);
+                if (products[i][a] >= 0 && products[i][a] != b) {
+                    throw error("message keys are inconsistent at %s", key);
+                }
+                products[i][a] = b;
+            }
+        }
+        int[][] result = new int[3][];
+        for (int i = 0; i < 3; i += 1) {
+            for (int v : products[i]) {
+                if (v < 0) {
+                    throw error("too few message keys to determine the "
+                                + "characteristic");
+                }
+            }
+            result[i] = new Permutation(products[i], alpha).cycleLengths();
+        }
+        return result;
+    }
+
+    /** Return the characteristic of ENGINE's machine at its current
+     *  settings, leaving ENGINE advanced by six steps. */
+    static int[][] characteristic(TableEngine engine) {
+        Alphabet alpha = engine.alphabet();
+        int size = alpha.size();
+        Permutation[] steps = new Permutation[6];
+        for (int i = 0; i < 6; i += 1) {
+            engine.advance();
+            int[] table = new int[size];
+            for (int x = 0; x < size; x += 1) {
+                table[x] = engine.substitute(x);
+            }
+            steps[i] = new Permutation(table, alpha);
+        }
+        int[][] result = new int[3][];
+        for (int i = 0; i < 3; i += 1) {
+            result[i] = steps[i].then(steps[i + 3]).cycleLengths();
+        }
+        return result;
+    }
+
+    /** Return a 32-bit hash of SIGNATURE. */
+    static int hash(int[][] signature) {
+        int h = 1;
+        for (int[] lengths : signature) {
+            h = 31 * h + Arrays.hashCode(lengths);
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /** Write the catalogue of M to FILE using THREADS threads, returning
+     *  the number of distinct characteristics. */
+    static int build(Machine M, File file, int threads) {
+        KeySpace space = new KeySpace(M);
+        long positions = space.positions();
+        long total = Math.multiplyExact(space.orders(), positions);
+        if (total > MAX_ENTRIES) {
+            throw error("configuration has too many settings to catalogue");
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long[] entries = new long[(int) total];
+        try {
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (long order = 0; order < space.orders(); order += 1) {
+                long index = order;
+                tasks.add(pool.submit(() -> catalogueOrder(
+                    M.copy(), space, index, entries)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Arrays.parallelSort(entries);
+        int distinct = 0;
+        for (int i = 0; i < entries.length; i += 1) {
+            if (i == 0 || (entries[i] >> 32) != (entries[i - 1] >> 32)) {
+                distinct += 1;
+            }
+        }
+        write(file, M, space, entries);
+        return distinct;
+    }
+
+    /** Fill the entries of ENTRIES for rotor order number ORDER of SPACE,
+     *  using M, a machine of my own. */
+    private static void catalogueOrder(Machine M, KeySpace space, long order,
+                                       long[] entries) {
+        TableEngine engine = engine(M, space, order);
+        int size = M.alphabet().size();
+        int[] positions = engine.positions();
+        long base = order * space.positions();
+        for (long p = 0; p < space.positions(); p += 1) {
+            decode(p, positions, size);
+            engine.setPositions(positions);
+            long candidate = base + p;
+            entries[(int) candidate] =
+                ((long) hash(characteristic(engine)) << 32) | candidate;
+        }
+    }
+
+    /** Return an engine for M with the rotors of rotor order number ORDER
+     *  of SPACE. */
+    private static TableEngine engine(Machine M, KeySpace space,
+                                      long order) {
+        M.setUp(settingsLine(M, space.order(order), new int[M.numRotors()]));
+        return new TableEngine(M);
+    }
+
+    /** Set POSITIONS[1 ..] to the settings numbered INDEX for an alphabet
+     *  of SIZE characters, the last slot varying fastest. */
+    private static void decode(long index, int[] positions, int size) {
+        for (int k = positions.length - 1; k > 0; k -= 1) {
+            positions[k] = (int) (index % size);
+            index /= size;
+        }
+    }
+
+    /** Return the settings line for M with rotors NAMES at POSITIONS. */
+    private static String settingsLine(Machine M, String[] names,
+                                       int[] positions) {
+        Alphabet alpha = M.alphabet();
+        StringBuilder line = new StringBuilder("*");
+        for (String name : names) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int k = 1; k < positions.length; k += 1) {
+            line.append(alpha.toChar(positions[k]));
+        }
+        return line.toString();
+    }
+
+    /** Return a hash of the parts of the configuration of M that
+     *  determine its catalogue: its alphabet, its numbers of slots and
+     *  pawls, and the name, kind, wiring and notches of each of its
+     *  rotors. */
+    static long configurationHash(Machine M) {
+        Alphabet alpha = M.alphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>(M.allRotors());
+        rotors.sort(Comparator.comparing(Rotor::name));
+        StringBuilder key = new StringBuilder();
+        key.append(alpha).append('|').append(M.numRotors()).append('|')
+            .append(M.numPawls());
+        for (Rotor rotor : rotors) {
+            key.append('|').append(rotor.name()).append('|')
+                .append(rotor.reflecting() ? 'R'
+                        : rotor.rotates() ? 'M' : 'N');
+            for (int w : rotor.permutation().table()) {
+                key.append((char) w);
+            }
+            for (int p = 0; p < alpha.size(); p += 1) {
+                key.append(rotor.atNotch(p) ? '1' : '0');
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(key.toString().getBytes("UTF-8"));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (NoSuchAlgorithmException | IOException excp) {
+            throw error("could not hash configuration: %s", excp);
+        }
+    }
+
+    /** Write the catalogue of M, whose rotor orders are SPACE, with the
+     *  sorted ENTRIES, to FILE. */
+    private static void write(File file, Machine M, KeySpace space,
+                              long[] entries) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = out.getChannel()) {
+            out.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(M.numRotors())
+                .putInt(M.alphabet().size()).putLong(space.orders())
+                .putLong(entries.length).putLong(configurationHash(M))
+                .flip();
+            channel.write(header);
+            ByteBuffer block = ByteBuffer.allocate(1 << 16);
+            for (int i = 0; i < entries.length; i += 1) {
+                if (!block.hasRemaining()) {
+                    block.flip();
+                    channel.write(block);
+                    block.clear();
+                }
+                block.putLong(entries[i]);
+            }
+            block.flip();
+            channel.write(block);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** The catalogue in FILE, built for the configuration of M. */
+    CycleCatalogue(Machine M, File file) {
+        _machine = M;
+        _space = new KeySpace(M);
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.remaining() < HEADER_SIZE || map.getInt() != MAGIC
+                || map.getInt() != VERSION) {
+                throw error("%s is not a catalogue", file);
+            }
+            int numRotors = map.getInt(), size = map.getInt();
+            long orders = map.getLong(), count = map.getLong();
+            if (numRotors != M.numRotors() || size != M.alphabet().size()
+                || orders != _space.orders()
+                || map.getLong() != configurationHash(M)) {
+                throw error("catalogue was built for another "
+                            + "configuration");
+            }
+            if (count != map.remaining() / 8) {
+                throw error("catalogue is truncated");
+            }
+            _entries = map.asLongBuffer();
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _entries.limit();
+    }
+
+    /** Return the settings lines (without plugboards) of the rotor orders
+     *  and positions whose characteristic is SIGNATURE.  Entries with the
+     *  same hash are sorted by candidate, and so grouped by rotor order,
+     *  so that the machine is set up once for each order among them
+     *  rather than once for each entry. */
+    List<String> lookup(int[][] signature) {
+        ArrayList<String> result = new ArrayList<>();
+        long key = (long) hash(signature) << 32;
+        int lo = 0, hi = _entries.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_entries.get(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int size = _machine.alphabet().size();
+        int[] positions = new int[_machine.numRotors()];
+        TableEngine engine = null;
+        long current = -1;
+        for (int i = lo; i < _entries.limit()
+                 && (_entries.get(i) >> 32) == (key >> 32); i += 1) {
+            long candidate = _entries.get(i) & 0xffffffffL;
+            long order = candidate / _space.positions();
+            if (order != current) {
+                engine = engine(_machine, _space, order);
+                current = order;
+            }
+            decode(candidate % _space.positions(), positions, size);
+            engine.setPositions(positions);
+            if (Arrays.deepEquals(characteristic(engine), signature)) {
+                result.add(settingsLine(_machine, _space.order(order),
+                                        positions));
+            }
+        }
+        return result;
+    }
+
+    /** Identifies catalogue files: "ENRC". */
+    static final int MAGIC = 0x454e5243;
+
+    /** Format version. */
+    static final int VERSION = 2;
+
+    /** Size of the header: magic, version, number of slots, alphabet
+     *  size, number of rotor orders, number of entries, and
+     *  configurationHash of the machine catalogued. */
+    static final int HEADER_SIZE = 40;
+
+    /** Largest number of entries in a catalogue. */
+    static final long MAX_ENTRIES = 1 << 28;
+
+    /** The configuration catalogued. */
+    private final Machine _machine;
+
+    /** Rotor orders of _machine. */
+    private final KeySpace _space;
+
+    /** The sorted entries. */
+    private final LongBuffer _entries;
+}
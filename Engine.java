@@ -0,0 +1,101 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Superclass of the converters that implement the behavior of a
+ *  configured enigma machine.  Machine is the reference engine; every
+ *  other engine is built from a configured Machine and must produce
+ *  exactly the same conversions as that Machine would from the same
+ *  state.
+ *  @author Zachary Zhang
+ */
+abstract class Engine {
+
+    /** Names of the engines accepted by forName. */
+    static final String[] NAMES = {
+        "machine", "table", "compiled", "keystream"
+    };
+
+    /** Return the engine called NAME (one of NAMES) for the machine M
+     *  in its current state.  The "machine" engine is M itself; other
+     *  engines copy M's state and leave M unchanged as they advance.
+     *  The "keystream" engine is a table engine when M has too many
+     *  rotor settings for a keystream table. */
+    static Engine forName(String name, Machine M) {
+        switch (name) {
+        case "machine":
+            return M;
+        case "table":
+            return new TableEngine(M);
+        case "compiled":
+            return CompiledEngine.compile(M);
+        case "keystream":
+            if (KeystreamEngine.fits(M)) {
+                return new KeystreamEngine(M);
+            }
+            return new TableEngine(M);
+        default:
+            throw error("unknown engine: %s", name);
+        }
+    }
+
+    /** Return my alphabet. */
+    abstract Alphabet alphabet();
+
+    /** Return true iff I can record traces. */
+    boolean canTrace() {
+        return false;
+    }
+
+    /** Record each of my subsequent conversions in RECORDER, whose
+     *  records must have as many slots as I have, or stop recording if
+     *  RECORDER is null.  Engines that cannot record (see canTrace)
+     *  throw an EnigmaException. */
+    void trace(TraceRecorder recorder) {
+        throw error("this engine cannot record traces");
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    abstract int convert(int c);
+
+    /** Replace each of MSG[START .. END-1], which are indices into my
+     *  alphabet, by its conversion, advancing the machine once for each
+     *  character. */
+    void convert(int[] msg, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            msg[i] = convert(msg[i]);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, ignoring blanks and
+     *  updating my state accordingly.  MSG is checked before any of it is
+     *  converted, and is then converted as one batch by convert(int[],
+     *  int, int), so that engines may take anything they do per batch,
+     *  such as checking whether they are tracing, out of their loop over
+     *  the characters. */
+    String convert(String msg) {
+        Alphabet alpha = alphabet();
+        int[] indices = new int[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (ch == ' ') {
+                continue;
+            }
+            if (!alpha.contains(ch)) {
+                throw new EnigmaException("char not in alphabet");
+            }
+            indices[n] = alpha.toInt(ch);
+            n += 1;
+        }
+        convert(indices, 0, n);
+        char[] result = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = alpha.toChar(indices[i]);
+        }
+        return new String(result);
+    }
+
+}
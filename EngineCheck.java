@@ -0,0 +1,268 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Differential checker and performance gate for engines.  Cross-checks
+ *  every engine named in Engine.NAMES against the reference Machine on
+ *  randomly generated alphabets, rotor sets, and settings, and then
+ *  measures each engine's throughput on a standard configuration.  Fails
+ *  if any engine diverges from the reference, runs slower than a fixed
+ *  minimum rate, or falls too far below its recorded baseline.
+ *  @author Zachary Zhang
+ */
+public final class EngineCheck {
+
+    /** Run the check with options ARGS, which may be any of
+     *      --seed N        seed for random configurations (default 1)
+     *      --configs N     number of random configurations (default 200)
+     *      --chars N       total characters cross-checked (default 2000000)
+     *      --min-rate R    minimum chars/second for every engine
+     *      --baseline F    properties file of recorded chars/second
+     *      --tolerance T   allowed fractional drop below baseline (0.2)
+     *      --record        write the measured rates to the baseline file
+     *  Exits normally if all checks pass; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (new EngineCheck(args).run()) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A checker configured by the options ARGS (see main). */
+    EngineCheck(String[] args) {
+        for (int i = 0; i < args.length; i += 1) {
+            String opt = args[i];
+            if (opt.equals("--record")) {
+                _record = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw error("missing value for %s", opt);
+            }
+            String val = args[++i];
+            try {
+                switch (opt) {
+                case "--seed":
+                    _seed = Long.parseLong(val);
+                    break;
+                case "--configs":
+                    _configs = Integer.parseInt(val);
+                    break;
+                case "--chars":
+                    _chars = Long.parseLong(val);
+                    break;
+                case "--min-rate":
+                    _minRate = Double.parseDouble(val);
+                    break;
+                case "--baseline":
+                    _baseline = new File(val);
+                    break;
+                case "--tolerance":
+                    _tolerance = Double.parseDouble(val);
+                    break;
+                default:
+                    throw error("unknown option: %s", opt);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", opt, val);
+            }
+        }
+        if (_configs <= 0) {
+            throw error("--configs must be positive");
+        }
+    }
+
+    /** Perform all checks, reporting on the standard output, and return
+     *  true iff they all pass. */
+    boolean run() {
+        boolean ok = true;
+        for (int c = 0; c < _configs; c += 1) {
+            Random rand = new Random(_seed * 1_000_003L + c);
+            String failure = crossCheck(RandomConfig.random(rand), rand,
+                                        _chars / _configs);
+            if (failure != null) {
+                System.out.printf("DIVERGED config %d (seed %d): %s%n",
+                                  c, _seed, failure);
+                ok = false;
+            }
+        }
+        System.out.printf("cross-checked %d engines on %d configurations, "
+                          + "%d characters in all%n", Engine.NAMES.length - 1,
+                          _configs, _chars);
+
+        Properties baseline = loadBaseline();
+        Properties measured = new Properties();
+        for (String name : Engine.NAMES) {
+            double rate = throughput(name);
+            measured.setProperty(name, String.format("%.0f", rate));
+            String status = "ok";
+            if (rate < _minRate) {
+                status = String.format("FAILED (below minimum %.0f)",
+                                       _minRate);
+                ok = false;
+            } else if (baseline.getProperty(name) != null) {
+                double base = Double.parseDouble(baseline.getProperty(name));
+                if (rate < base * (1.0 - _tolerance)) {
+                    status = String.format("FAILED (baseline %.0f)", base);
+                    ok = false;
+                }
+            }
+            System.out.printf("%-10s %14.0f chars/s  %s%n", name, rate,
+                              status);
+        }
+        if (_record) {
+            saveBaseline(measured);
+        }
+        return ok;
+    }
+
+    /** Cross-check all non-reference engines against the reference
+     *  Machine for configuration CONFIG, using RAND for settings and
+     *  messages, over about LENGTH characters.  Return a description of
+     *  the first divergence, or null if there is none. */
+    static String crossCheck(RandomConfig config, Random rand, long length) {
+        Machine reference = config.machine();
+        Machine source = config.machine();
+        long done = 0;
+        while (done < length || done == 0) {
+            String settings = config.settingsLine(rand.nextInt(8),
+                                                  rand.nextInt(4) == 0,
+                                                  rand.nextBoolean());
+            reference.setUp(settings);
+            source.setUp(settings);
+            ArrayList<String> names = new ArrayList<>();
+            ArrayList<Engine> engines = new ArrayList<>();
+            for (String name : Engine.NAMES) {
+                if (!name.equals("machine")) {
+                    names.add(name);
+                    engines.add(Engine.forName(name, source));
+                }
+            }
+            int messages = 1 + rand.nextInt(4);
+            for (int m = 0; m < messages; m += 1) {
+                int[] msg = new int[1 + rand.nextInt(4000)];
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = config.randomIndex();
+                }
+                int[] expected = msg.clone();
+                reference.convert(expected, 0, expected.length);
+                for (int e = 0; e < engines.size(); e += 1) {
+                    int[] actual = msg.clone();
+                    int split = rand.nextInt(actual.length + 1);
+                    engines.get(e).convert(actual, 0, split);
+                    engines.get(e).convert(actual, split, actual.length);
+                    for (int i = 0; i < actual.length; i += 1) {
+                        if (actual[i] != expected[i]) {
+                            return String.format("engine %s, settings "
+                                                 + "\"%s\", message %d, "
+                                                 + "character %d",
+                                                 names.get(e),
+                                                 settings, m, i);
+                        }
+                    }
+                }
+                done += msg.length;
+            }
+        }
+        return null;
+    }
+
+    /** Return the measured conversion rate in characters per second of
+     *  the engine called NAME on a five-slot, three-pawl machine with a
+     *  26-character alphabet. */
+    static double throughput(String name) {
+        Random rand = new Random(BENCH_SEED);
+        RandomConfig config = new RandomConfig(rand, 26, 5, 3, 0, false);
+        Machine M = config.machine();
+        M.setUp(config.settingsLine(10, false));
+        Engine engine = Engine.forName(name, M);
+        int[] msg = new int[BENCH_LENGTH];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = config.randomIndex();
+        }
+        for (int i = 0; i < WARMUP_ROUNDS; i += 1) {
+            engine.convert(msg, 0, msg.length);
+        }
+        long chars = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            engine.convert(msg, 0, msg.length);
+            chars += msg.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < BENCH_NANOS);
+        return chars * 1e9 / elapsed;
+    }
+
+    /** Return the recorded baseline rates, empty if there are none. */
+    private Properties loadBaseline() {
+        Properties result = new Properties();
+        if (_baseline != null && _baseline.exists()) {
+            try (Reader in = new FileReader(_baseline)) {
+                result.load(in);
+            } catch (IOException excp) {
+                throw error("could not read %s", _baseline);
+            }
+        }
+        return result;
+    }
+
+    /** Record RATES as the baseline. */
+    private void saveBaseline(Properties rates) {
+        if (_baseline == null) {
+            throw error("--record requires --baseline");
+        }
+        try (Writer out = new FileWriter(_baseline)) {
+            rates.store(out, "engine throughput baseline, chars/second");
+        } catch (IOException excp) {
+            throw error("could not write %s", _baseline);
+        }
+    }
+
+    /** Seed of the benchmark configuration. */
+    static final long BENCH_SEED = 61;
+
+    /** Length of the benchmark message. */
+    static final int BENCH_LENGTH = 1 << 20;
+
+    /** Number of untimed passes over the benchmark message. */
+    static final int WARMUP_ROUNDS = 3;
+
+    /** Minimum time spent timing each engine. */
+    static final long BENCH_NANOS = 1_000_000_000L;
+
+    /** Seed for random configurations. */
+    private long _seed = 1;
+
+    /** Number of random configurations. */
+    private int _configs = 200;
+
+    /** Total number of characters to cross-check. */
+    private long _chars = 2_000_000;
+
+    /** Minimum acceptable rate for every engine. */
+    private double _minRate = 0;
+
+    /** File of baseline rates, or null. */
+    private File _baseline;
+
+    /** Allowed fractional shortfall relative to the baseline. */
+    private double _tolerance = 0.2;
+
+    /** True iff measured rates are to be recorded. */
+    private boolean _record;
+}
@@ -0,0 +1,508 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.MachineTest.navalMachine;
+
+/** The suite of all JUnit tests for the engines.
+ *  @author Zachary Zhang
+ */
+public class EngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEnginesMatchNavalMachine() {
+        for (String name : Engine.NAMES) {
+            Machine reference = navalMachine();
+            Machine source = navalMachine();
+            reference.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+            source.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+            Engine engine = Engine.forName(name, source);
+            String msg = "HYIHLBKOMLIUYDCMPPSFSZWFROMHISSHOULDERHIAWATHA";
+            for (int i = 0; i < 20; i += 1) {
+                assertEquals(name, reference.convert(msg),
+                             engine.convert(msg));
+            }
+        }
+    }
+
+    @Test
+    public void testEnginesMatchRandomMachines() {
+        for (int c = 0; c < 20; c += 1) {
+            Random rand = new Random(c);
+            assertNull(EngineCheck.crossCheck(RandomConfig.random(rand),
+                                              rand, 5000));
+        }
+    }
+
+    @Test
+    public void testTableEngineLeavesMachineUnchanged() {
+        Machine M = navalMachine();
+        M.setUp("* B Beta III IV I AXLE");
+        TableEngine engine = new TableEngine(M);
+        engine.convert("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+        assertEquals('E', M.alphabet().toChar(M.rotor(4).setting()));
+        assertEquals(M.rotor(4).setting() + 39 - 26,
+                     engine.positions()[4]);
+    }
+
+    @Test
+    public void testOdometerMatchesStepping() {
+        for (int c = 0; c < 40; c += 1) {
+            Random rand = new Random(c);
+            RandomConfig config = RandomConfig.random(rand);
+            Machine M = config.machine();
+            M.setUp(config.settingsLine(0, true));
+            TableEngine engine = new TableEngine(M);
+            Odometer odometer = new Odometer(M);
+            int[] positions = engine.positions();
+            for (int n = 0; n < 20; n += 1) {
+                int steps = rand.nextInt(n < 10 ? 10 : 20000);
+                for (int i = 0; i < steps; i += 1) {
+                    engine.advance();
+                }
+                odometer.advance(positions, steps);
+                assertArrayEquals(engine.positions(), positions);
+            }
+        }
+    }
+
+    @Test
+    public void testChannelReadsAtAnyPosition() throws IOException {
+        Machine M = navalMachine();
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        Random rand = new Random(0);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i += 1) {
+            text.append((char) ('A' + rand.nextInt(26)));
+        }
+        String plain = M.convert(text.toString());
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.toString().getBytes("ISO-8859-1"));
+        try (EnigmaChannel channel =
+                 new EnigmaChannel(FileChannel.open(file.toPath()), M)) {
+            assertEquals(text.length(), channel.size());
+            for (int n = 0; n < 50; n += 1) {
+                int start = rand.nextInt(text.length());
+                ByteBuffer buf = ByteBuffer.allocate(rand.nextInt(100));
+                channel.position(start);
+                int len = Math.max(0, channel.read(buf));
+                assertEquals(plain.substring(start, start + len),
+                             new String(buf.array(), 0, len, "ISO-8859-1"));
+                assertEquals(start + len, channel.position());
+            }
+        }
+    }
+
+    @Test
+    public void testChannelStopsAtByteOutsideAlphabet() throws IOException {
+        Machine M = navalMachine();
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        String plain = M.convert("HELLOAWORLD");
+        plain = plain.substring(0, 5) + plain.substring(6);
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "HELLO-WORLD".getBytes("ISO-8859-1"));
+        try (EnigmaChannel channel =
+                 new EnigmaChannel(FileChannel.open(file.toPath()), M)) {
+            ByteBuffer buf = ByteBuffer.allocate(20);
+            assertEquals(5, channel.read(buf));
+            assertEquals(5, channel.position());
+            for (int attempt = 0; attempt < 2; attempt += 1) {
+                try {
+                    channel.read(buf);
+                    fail("byte outside the alphabet read");
+                } catch (IOException excp) {
+                    assertEquals("byte at 5 is not in the alphabet",
+                                 excp.getMessage());
+                }
+                assertEquals(5, buf.position());
+                assertEquals(5, channel.position());
+            }
+            channel.position(6);
+            assertEquals(5, channel.read(buf));
+            assertEquals(plain, new String(buf.array(), 0, 10, "ISO-8859-1"));
+        }
+    }
+
+    @Test
+    public void testCompiledClassesAreSharedAcrossSettings() {
+        Machine M = navalMachine();
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        CompiledEngine first = CompiledEngine.compile(M);
+        M.setUp("* B Beta III IV I QRST (YF) (ZH)");
+        CompiledEngine second = CompiledEngine.compile(M);
+        assertEquals(first.getClass(), second.getClass());
+        assertEquals('Q', M.alphabet().toChar(second.positions()[1]));
+        M.setUp("* B Beta III IV I QRST (YF)");
+        assertTrue(first.getClass()
+                   != CompiledEngine.compile(M).getClass());
+    }
+
+    @Test
+    public void testCascadesMatchMachinesInSeries() {
+        for (int c = 0; c < 10; c += 1) {
+            Random rand = new Random(c);
+            RandomConfig config = RandomConfig.random(rand);
+            int count = 2 + rand.nextInt(2);
+            String[] settings = new String[count];
+            for (int s = 0; s < count; s += 1) {
+                settings[s] = config.settingsLine(rand.nextInt(3), true,
+                                                  rand.nextBoolean());
+            }
+            Alphabet alpha = config.machine().alphabet();
+            int[] msg = new int[2000];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = rand.nextInt(alpha.size());
+            }
+            for (String name : Engine.NAMES) {
+                ArrayList<Machine> stages = new ArrayList<>();
+                for (int s = 0; s < count; s += 1) {
+                    Machine M = config.machine();
+                    M.setUp(settings[s]);
+                    stages.add(M);
+                }
+                int[] expected = msg.clone();
+                for (String setting : settings) {
+                    Machine M = config.machine();
+                    M.setUp(setting);
+                    M.convert(expected, 0, expected.length);
+                }
+                int[] result = msg.clone();
+                Cascade cascade = new Cascade(stages, name);
+                cascade.convert(result, 0, 1000);
+                for (int i = 1000; i < result.length; i += 1) {
+                    result[i] = cascade.convert(result[i]);
+                }
+                assertArrayEquals(name, expected, result);
+            }
+        }
+    }
+
+    @Test
+    public void testTracesReplayAndMatchAcrossEngines() {
+        for (int c = 0; c < 10; c += 1) {
+            Random rand = new Random(c);
+            RandomConfig config = RandomConfig.random(rand);
+            String settings = config.settingsLine(2, true, true);
+            Machine M = config.machine();
+            M.setUp(settings);
+            int size = M.alphabet().size(), n = M.numRotors();
+            TraceRecorder[] traces = {
+                new TraceRecorder(n, size, 3000),
+                new TraceRecorder(n, size, 3000)
+            };
+            int[] msg = new int[10000];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = rand.nextInt(size);
+            }
+            Engine[] engines = { new TableEngine(M), M };
+            for (int e = 0; e < engines.length; e += 1) {
+                engines[e].trace(traces[e]);
+                engines[e].convert(msg.clone(), 0, msg.length);
+                engines[e].trace(null);
+            }
+            TraceReader table = new TraceReader(traces[0].contents());
+            assertEquals(7000, table.first());
+            assertEquals(10000, table.count());
+            M.setUp(settings);
+            PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+            assertTrue(table.replay(M, quiet));
+            TraceReader machine = new TraceReader(traces[1].contents());
+            assertTrue(table.diff(machine, quiet));
+        }
+    }
+
+    @Test
+    public void testMainWritesTraceWhenProcessingFails()
+        throws IOException {
+        File trace = File.createTempFile("enigma", ".trace");
+        Main main =
+            new Main(null, new Scanner("* B Beta III IV I AXLE (YF)\n"
+                                       + "HELLO WORLD\n* B Beta III\n"),
+                     new PrintStream(new ByteArrayOutputStream()));
+        main.setTraceName(trace.getPath());
+        try {
+            main.process(navalMachine());
+            fail("bad settings line accepted");
+        } catch (EnigmaException excp) {
+            TraceReader reader = new TraceReader(trace);
+            assertEquals(10, reader.count());
+            Machine M = navalMachine();
+            M.setUp("* B Beta III IV I AXLE (YF)");
+            assertTrue(reader.replay(M, new PrintStream(
+                new ByteArrayOutputStream())));
+        } finally {
+            trace.delete();
+        }
+    }
+
+    @Test
+    public void testTracesReplayAcrossSettingsLinesForEveryEngine()
+        throws IOException {
+        String input = "* B Beta III IV I AXLE (YF) (TH)\n"
+            + "HYIHLBKOMLIUYDCMPPSFSZWFROMHISSHOULDERHIAWATHA\n"
+            + "* B Gamma II IV V QRST (AB) (CD)\nHELLO WORLD\n\n"
+            + "* C Beta I II III AAAA\n* B Beta I II III ZZZZ\n"
+            + "FROM HIS SHOULDER\n";
+        File trace = File.createTempFile("enigma", ".trace");
+        try {
+            for (String name : Engine.NAMES) {
+                ByteArrayOutputStream plain = new ByteArrayOutputStream(),
+                    traced = new ByteArrayOutputStream();
+                Main main = new Main(null, new Scanner(input),
+                                     new PrintStream(plain));
+                main.setEngineName(name);
+                main.setTraceName(null);
+                main.process(navalMachine());
+                main = new Main(null, new Scanner(input),
+                                new PrintStream(traced));
+                main.setEngineName(name);
+                main.setTraceName(trace.getPath());
+                main.process(navalMachine());
+                assertEquals(name, plain.toString(), traced.toString());
+                TraceReader reader = new TraceReader(trace);
+                assertEquals(name, 71, reader.count());
+                assertEquals(name, 4, reader.settingsCount());
+                assertEquals(name, 56, reader.settingsRecord(3));
+                assertEquals(name, "* C Beta I II III AAAA",
+                             reader.settingsLine(2));
+                ByteArrayOutputStream report = new ByteArrayOutputStream();
+                assertTrue(name, reader.replay(navalMachine(),
+                                               new PrintStream(report)));
+                assertEquals(name, "71 records, 0 mismatched, "
+                             + "0 discontinuities, 0 unchecked",
+                             report.toString().trim());
+            }
+        } finally {
+            trace.delete();
+        }
+    }
+
+    @Test
+    public void testKeystreamTablesAreSharedAcrossSettings()
+        throws IOException {
+        File dir = Files.createTempDirectory("keystream").toFile();
+        String[] settings = {
+            "* B Beta III IV I AXLE (YF) (ZH)",
+            "* B Beta III IV I QRST (YF) (ZH)",
+            "* B Beta III IV I QRST (YF)"
+        };
+        String msg = "HYIHLBKOMLIUYDCMPPSFSZWFROMHISSHOULDERHIAWATHA";
+        for (String setting : settings) {
+            Machine M = navalMachine();
+            M.setUp(setting);
+            KeystreamEngine engine = new KeystreamEngine(M, dir);
+            for (int i = 0; i < 20; i += 1) {
+                assertEquals(M.convert(msg), engine.convert(msg));
+            }
+        }
+        File[] tables = dir.listFiles();
+        assertEquals(2, tables.length);
+        for (File table : tables) {
+            table.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testPrefixEngineTakesNotchesOfSharedWirings() {
+        Alphabet upper = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        Permutation shared =
+            new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                            upper);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) "
+            + "(TV)", upper)));
+        rotors.add(new MovingRotor("Q", shared, "Q"));
+        rotors.add(new MovingRotor("A", shared, "A"));
+        rotors.add(new MovingRotor("III", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", upper), "V"));
+        Machine M = new Machine(upper, 4, 3, rotors);
+        M.setUp("* B III Q A AAA");
+        PrefixEngine engine = new PrefixEngine(M);
+        M.setUp("* B III A Q AAA");
+        engine.setRotors(M);
+        TableEngine reference = new TableEngine(M);
+        Random rand = new Random(0);
+        for (int i = 0; i < 2000; i += 1) {
+            int ch = rand.nextInt(26);
+            assertEquals(reference.convert(ch), engine.convert(ch));
+        }
+    }
+
+    @Test
+    public void testPrefixEngineMatchesAcrossOrders() {
+        for (int c = 0; c < 20; c += 1) {
+            Random rand = new Random(c);
+            RandomConfig config = RandomConfig.random(rand);
+            Machine M = config.machine();
+            M.setUp(config.settingsLine(0, false));
+            PrefixEngine engine = new PrefixEngine(M);
+            for (int n = 0; n < 10; n += 1) {
+                M.setUp(config.settingsLine(rand.nextInt(3), false,
+                                            rand.nextBoolean()));
+                engine.setRotors(M);
+                TableEngine reference = new TableEngine(M);
+                for (int i = 0; i < 500; i += 1) {
+                    int ch = config.randomIndex();
+                    assertEquals(reference.convert(ch), engine.convert(ch));
+                }
+                assertArrayEquals(reference.positions(),
+                                  engine.positions());
+            }
+        }
+    }
+
+    @Test
+    public void testBestFirstSearchFindsExhaustiveTop() {
+        Machine M = navalMachine();
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        String plain = ("THEREWASNOWHERETOGOBUTONTHEWATERANDWEWENTONUNTIL"
+                        + "THESUNSETBEHINDTHEHILLSANDTHESEABECAMEDARKER");
+        int[] cipher = new int[plain.length()];
+        for (int i = 0; i < cipher.length; i += 1) {
+            cipher[i] = M.convert(plain.charAt(i) - 'A');
+        }
+        M.setUp("* B Beta III IV I AAAA (YF) (ZH)");
+        Scorer scorer = new Scorer(M.alphabet());
+        TopK exhaustive = new TopK(5);
+        ArrayList<int[]> starts = new ArrayList<>();
+        for (int p = 0; p < 26 * 26 * 4; p += 1) {
+            int[] start = { 0, 0, (23 + p % 4 * 6) % 26, p / 4 / 26,
+                            p / 4 % 26 };
+            starts.add(start);
+            TableEngine engine = new TableEngine(M);
+            engine.setPositions(start);
+            double score = 0;
+            for (int c : cipher) {
+                score += scorer.weight(engine.convert(c));
+            }
+            exhaustive.add(score, Arrays.toString(start));
+        }
+        for (int threads = 1; threads <= 3; threads += 2) {
+            BestFirstSearch search =
+                new BestFirstSearch(cipher, scorer, 8, threads, false);
+            TopK top = new TopK(5);
+            search.search(M, starts, top, Arrays::toString);
+            assertEquals(exhaustive.format(), top.format());
+            assertEquals("[0, 0, 23, 11, 4]", top.entries().get(0).settings);
+            assertTrue(search.characters()
+                       < (long) starts.size() * cipher.length * 9 / 10);
+        }
+    }
+
+    @Test
+    public void testBestFirstSearchIsExactWithManyWorkers() {
+        for (int c = 0; c < 40; c += 1) {
+            Random rand = new Random(c);
+            RandomConfig config = new RandomConfig(rand, 8, 4, 3, 0, false);
+            Machine M = config.machine();
+            M.setUp(config.settingsLine(1, false));
+            int[] sample = new int[100], cipher = new int[40];
+            for (int i = 0; i < sample.length; i += 1) {
+                sample[i] = rand.nextInt(1 + rand.nextInt(8));
+            }
+            for (int i = 0; i < cipher.length; i += 1) {
+                cipher[i] = rand.nextInt(8);
+            }
+            Scorer scorer = new Scorer(M.alphabet(), sample);
+            int k = 1 + rand.nextInt(10);
+            TopK exhaustive = new TopK(k);
+            ArrayList<int[]> starts = new ArrayList<>();
+            for (int p = 0; p < 512; p += 1) {
+                int[] start = { 0, p / 64, p / 8 % 8, p % 8 };
+                starts.add(start);
+                TableEngine engine = new TableEngine(M);
+                engine.setPositions(start);
+                double score = 0;
+                for (int ch : cipher) {
+                    score += scorer.weight(engine.convert(ch));
+                }
+                exhaustive.add(score, Arrays.toString(start));
+            }
+            TopK top = new TopK(k);
+            new BestFirstSearch(cipher, scorer, 1 + rand.nextInt(3), 4,
+                                false)
+                .search(M, starts, top, Arrays::toString);
+            assertEquals(scores(exhaustive), scores(top));
+        }
+    }
+
+    /** Return the scores of the candidates in TOP, best first. */
+    private static String scores(TopK top) {
+        StringBuilder result = new StringBuilder();
+        for (TopK.Entry e : top.entries()) {
+            result.append(e.score).append(' ');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testBestFirstSearchAllowsFixedPoints() {
+        for (int c = 0; c < 10; c += 1) {
+            Random rand = new Random(c);
+            RandomConfig config = new RandomConfig(rand, 7, 3, 2, 0, false);
+            Machine M = config.machine();
+            assertTrue(M.selfEncrypting());
+            M.setUp(config.settingsLine(0, false));
+            int[] sample = new int[200], cipher = new int[60];
+            for (int i = 0; i < sample.length; i += 1) {
+                sample[i] = rand.nextInt(3) == 0 ? 0 : rand.nextInt(7);
+            }
+            for (int i = 0; i < cipher.length; i += 1) {
+                cipher[i] = rand.nextInt(3) == 0 ? 0 : rand.nextInt(7);
+            }
+            Scorer scorer = new Scorer(M.alphabet(), sample);
+            TopK exhaustive = new TopK(3);
+            ArrayList<int[]> starts = new ArrayList<>();
+            for (int p = 0; p < 49; p += 1) {
+                int[] start = { 0, p / 7, p % 7 };
+                starts.add(start);
+                TableEngine engine = new TableEngine(M);
+                engine.setPositions(start);
+                double score = 0;
+                for (int ch : cipher) {
+                    score += scorer.weight(engine.convert(ch));
+                }
+                exhaustive.add(score, Arrays.toString(start));
+            }
+            TopK top = new TopK(3);
+            new BestFirstSearch(cipher, scorer, 4, 1, true)
+                .search(M, starts, top, Arrays::toString);
+            assertEquals(exhaustive.format(), top.format());
+            try {
+                new BestFirstSearch(cipher, scorer, 4, 1, false)
+                    .search(M, starts, new TopK(3), Arrays::toString);
+                fail("fixed points not detected");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+}
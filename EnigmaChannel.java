@@ -0,0 +1,159 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/** A read-only channel presenting the conversion of the contents of
+ *  another channel by a configured machine.  Each byte of the source is
+ *  one character of the machine's alphabet (in ISO-8859-1), and is
+ *  converted as if by a machine set up at the start of the source and
+ *  stepped once for every byte before it.  Since the machine is its own
+ *  inverse, reading an enciphered file yields its plaintext and vice
+ *  versa.  Repositioning computes the rotor settings at the new position
+ *  with an Odometer, so a read of N bytes at any position costs O(N)
+ *  conversions and does not depend on the position.
+ *  @author Zachary Zhang
+ */
+class EnigmaChannel implements SeekableByteChannel {
+
+    /** A channel presenting the conversion of the bytes of SOURCE by M,
+     *  where M has been set up as it was at the start of SOURCE.  The
+     *  position of SOURCE is changed by my reads; M is not changed. */
+    EnigmaChannel(SeekableByteChannel source, Machine M) {
+        _source = source;
+        _alphabet = M.alphabet();
+        _engine = new TableEngine(M);
+        _odometer = new Odometer(M);
+        _start = _engine.positions();
+        _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /** Read converted bytes into DST, as for ReadableByteChannel.read.
+     *  The bytes read from the source are checked before any is
+     *  converted.  If a byte is not in my alphabet, only the bytes
+     *  before it are converted and returned, and the read that starts
+     *  at it throws an IOException, leaving DST, my position and my
+     *  rotor settings unchanged. */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkOpen();
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        _source.position(_position);
+        _buffer.clear();
+        _buffer.limit(Math.min(_buffer.capacity(), dst.remaining()));
+        int n = _source.read(_buffer);
+        if (n <= 0) {
+            return n;
+        }
+        _buffer.flip();
+        for (int i = 0; i < n; i += 1) {
+            if (!_alphabet.contains((char) (_buffer.get(i) & 0xff))) {
+                if (i == 0) {
+                    throw new IOException(String.format(
+                        "byte at %d is not in the alphabet", _position));
+                }
+                n = i;
+                break;
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            char ch = (char) (_buffer.get() & 0xff);
+            dst.put((byte) _alphabet.toChar(
+                _engine.convert(_alphabet.toInt(ch))));
+        }
+        _position += n;
+        return n;
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return _position;
+    }
+
+    /** Set my position to NEWPOSITION, returning this channel. */
+    @Override
+    public EnigmaChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        if (newPosition != _position) {
+            int[] positions;
+            long steps;
+            if (newPosition > _position) {
+                positions = _engine.positions();
+                steps = newPosition - _position;
+            } else {
+                positions = _start.clone();
+                steps = newPosition;
+            }
+            _odometer.advance(positions, steps);
+            _engine.setPositions(positions);
+            _position = newPosition;
+        }
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return _source.size();
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return _source.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _source.close();
+    }
+
+    /** Throw ClosedChannelException if I am closed. */
+    private void checkOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /** Size of the buffer for bytes read from the source. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** The channel I convert. */
+    private final SeekableByteChannel _source;
+
+    /** My machine's alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Converts characters, with rotors set for my current position. */
+    private final TableEngine _engine;
+
+    /** Finds the rotor settings at a position. */
+    private final Odometer _odometer;
+
+    /** Rotor settings at position 0. */
+    private final int[] _start;
+
+    /** Holds bytes read from the source. */
+    private final ByteBuffer _buffer;
+
+    /** My current position. */
+    private long _position;
+}
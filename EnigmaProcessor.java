@@ -0,0 +1,237 @@
+package enigma;
+
+import java.util.concurrent.Flow;
+
+/** A Flow.Processor that passes Chunks through a configured machine.
+ *  TEXT and INDICES chunks are converted in place, in order, with the
+ *  rotors carrying over from one chunk to the next, and are then
+ *  published.  In TEXT chunks, whitespace is passed through unchanged
+ *  without advancing the rotors; any other character not in the alphabet
+ *  is an error.  SETTINGS chunks re-key the machine as a '*' line does
+ *  in Main.process, are released, and produce no output.
+ *
+ *  Each chunk requested from upstream is one that the subscriber has
+ *  asked for, so demand flows back to the source unchanged and no
+ *  chunks are ever queued.  Because conversion happens in place on
+ *  pooled chunks, steady-state operation allocates nothing.  The
+ *  subscriber is responsible for releasing each chunk it receives.
+ *  @author Zachary Zhang
+ */
+final class EnigmaProcessor
+    implements Flow.Processor<Chunk, Chunk>, Flow.Subscription {
+
+    /** A processor using an engine of the kind named ENGINE (one of
+     *  Engine.NAMES) on the machine M, whose rotors and plugboard must be
+     *  set up unless the first chunk is a SETTINGS chunk. */
+    EnigmaProcessor(Machine M, String engine) {
+        _machine = M;
+        _engineName = engine;
+        _alphabet = M.alphabet();
+    }
+
+    /* Subscriber side. */
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long demand;
+        synchronized (this) {
+            if (_upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+            demand = _pendingDemand;
+            _pendingDemand = 0;
+        }
+        if (_cancelled) {
+            subscription.cancel();
+        } else if (demand > 0) {
+            subscription.request(demand);
+        }
+    }
+
+    @Override
+    public void onNext(Chunk chunk) {
+        if (_done) {
+            chunk.release();
+            return;
+        }
+        try {
+            switch (chunk.kind()) {
+            case Chunk.SETTINGS:
+                _machine.setUp(chunk.settings());
+                _engine = null;
+                chunk.release();
+                _upstream.request(1);
+                return;
+            case Chunk.INDICES:
+                engine().convert(chunk.indices(), 0, chunk.length());
+                break;
+            default:
+                convertText(chunk.text(), chunk.length());
+                break;
+            }
+        } catch (RuntimeException excp) {
+            chunk.release();
+            _upstream.cancel();
+            onError(excp);
+            return;
+        }
+        _downstream.onNext(chunk);
+    }
+
+    @Override
+    public void onError(Throwable excp) {
+        Flow.Subscriber<? super Chunk> downstream;
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            _done = true;
+            _error = excp;
+            downstream = _downstream;
+        }
+        if (downstream != null) {
+            downstream.onError(excp);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        Flow.Subscriber<? super Chunk> downstream;
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            _done = true;
+            downstream = _downstream;
+        }
+        if (downstream != null) {
+            downstream.onComplete();
+        }
+    }
+
+    /* Publisher side. */
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Chunk> subscriber) {
+        boolean accepted, done;
+        Throwable error;
+        synchronized (this) {
+            accepted = _downstream == null;
+            if (accepted) {
+                _downstream = subscriber;
+            }
+            done = _done;
+            error = _error;
+        }
+        if (!accepted) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+            subscriber.onError(new IllegalStateException(
+                "EnigmaProcessor allows only one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(this);
+        if (done) {
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            onError(new IllegalArgumentException(
+                "non-positive subscription request"));
+            cancel();
+            return;
+        }
+        Flow.Subscription upstream;
+        synchronized (this) {
+            upstream = _upstream;
+            if (upstream == null) {
+                _pendingDemand = _pendingDemand + n < 0 ? Long.MAX_VALUE
+                    : _pendingDemand + n;
+                return;
+            }
+        }
+        upstream.request(n);
+    }
+
+    @Override
+    public void cancel() {
+        Flow.Subscription upstream;
+        synchronized (this) {
+            _cancelled = true;
+            _done = true;
+            upstream = _upstream;
+        }
+        if (upstream != null) {
+            upstream.cancel();
+        }
+    }
+
+    /** Return the engine for the current settings of _machine, building
+     *  it if the settings have changed. */
+    private Engine engine() {
+        if (_engine == null) {
+            _engine = Engine.forName(_engineName, _machine);
+        }
+        return _engine;
+    }
+
+    /** Convert TEXT[0 .. LENGTH-1] in place. */
+    private void convertText(char[] text, int length) {
+        Engine engine = engine();
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < length; i += 1) {
+            char ch = text[i];
+            if (alpha.contains(ch)) {
+                text[i] = alpha.toChar(engine.convert(alpha.toInt(ch)));
+            } else if (!Character.isWhitespace(ch)) {
+                throw new EnigmaException("char not in alphabet");
+            }
+        }
+    }
+
+    /** The machine re-keyed by SETTINGS chunks. */
+    private final Machine _machine;
+
+    /** Name of the kind of engine used for conversion. */
+    private final String _engineName;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Engine for the current settings, or null if not yet built. */
+    private Engine _engine;
+
+    /** Source of chunks, or null if not yet subscribed. */
+    private Flow.Subscription _upstream;
+
+    /** Consumer of converted chunks, or null if none yet. */
+    private Flow.Subscriber<? super Chunk> _downstream;
+
+    /** Demand received before _upstream was known. */
+    private long _pendingDemand;
+
+    /** True once the subscriber has cancelled. */
+    private volatile boolean _cancelled;
+
+    /** True once a terminal signal has been received or sent. */
+    private volatile boolean _done;
+
+    /** The error that terminated the stream, or null. */
+    private Throwable _error;
+}
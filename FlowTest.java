@@ -0,0 +1,235 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static enigma.MachineTest.navalMachine;
+
+/** The suite of all JUnit tests for EnigmaProcessor and its chunks.
+ *  @author Zachary Zhang
+ */
+public class FlowTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings line used throughout. */
+    static final String KEY = "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** A publisher that emits the chunks it is given, synchronously and
+     *  only as requested, and then completes. */
+    static class Source
+        implements Flow.Publisher<Chunk>, Flow.Subscription {
+        /** A source of CHUNKS. */
+        Source(List<Chunk> chunks) {
+            _chunks = chunks;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Chunk> subscriber) {
+            _subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            requested += n;
+            _demand += n;
+            if (_emitting) {
+                return;
+            }
+            _emitting = true;
+            while (_demand > 0 && _next < _chunks.size() && !cancelled) {
+                _demand -= 1;
+                _next += 1;
+                _subscriber.onNext(_chunks.get(_next - 1));
+            }
+            if (_next == _chunks.size() && !cancelled && !_completed) {
+                _completed = true;
+                _subscriber.onComplete();
+            }
+            _emitting = false;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /** Total demand received. */
+        long requested;
+        /** True once cancelled. */
+        boolean cancelled;
+
+        /** Chunks to emit. */
+        private final List<Chunk> _chunks;
+        /** My subscriber. */
+        private Flow.Subscriber<? super Chunk> _subscriber;
+        /** Unmet demand. */
+        private long _demand;
+        /** Index of the next chunk to emit. */
+        private int _next;
+        /** True while emitting, so that reentrant requests only add
+         *  demand. */
+        private boolean _emitting;
+        /** True once completion has been signalled. */
+        private boolean _completed;
+    }
+
+    /** A subscriber that records what it receives, releasing chunks, and
+     *  requests only when told to. */
+    static class Sink implements Flow.Subscriber<Chunk> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Chunk chunk) {
+            received.add(chunk.toString());
+            chunk.release();
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            error = excp;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        /** My subscription. */
+        Flow.Subscription subscription;
+        /** Contents of the chunks received. */
+        final ArrayList<String> received = new ArrayList<>();
+        /** Error received, or null. */
+        Throwable error;
+        /** True once completed. */
+        boolean completed;
+    }
+
+    /** Return a chunk from POOL holding the text or, if it starts with
+     *  '*', the settings line S. */
+    static Chunk chunk(ChunkPool pool, String s) {
+        Chunk result = pool.poll();
+        return s.startsWith("*") ? result.setSettings(s) : result.setText(s);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDemandFlowsBackUnchanged() {
+        ChunkPool pool = new ChunkPool(8, 16);
+        String[] texts = { "HELLO", "WORLD", "FROM", "THE SEA", "AGAIN" };
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        for (String text : texts) {
+            chunks.add(chunk(pool, text));
+        }
+        Source source = new Source(chunks);
+        Machine M = navalMachine();
+        M.setUp(KEY);
+        EnigmaProcessor processor = new EnigmaProcessor(M, "table");
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.subscription.request(2);
+        assertEquals(2, sink.received.size());
+        assertEquals(2, source.requested);
+        assertFalse(sink.completed);
+        sink.subscription.request(10);
+        assertEquals(5, sink.received.size());
+        assertTrue(sink.completed);
+        assertEquals("THE SEA".indexOf(' '),
+                     sink.received.get(3).indexOf(' '));
+        Machine reference = navalMachine();
+        reference.setUp(KEY);
+        assertEquals(reference.convert(String.join("", texts)
+                                       .replace(" ", "")),
+                     String.join("", sink.received).replace(" ", ""));
+        assertEquals(8, pool.available());
+    }
+
+    @Test
+    public void testSettingsChunksRekeyWithoutOutput() {
+        ChunkPool pool = new ChunkPool(4, 40);
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        chunks.add(chunk(pool, KEY));
+        chunks.add(chunk(pool, "HYIHLBKOMLIUYDCMPPSFSZW"));
+        chunks.add(chunk(pool, KEY));
+        chunks.add(chunk(pool, "HYIHLBKOMLIUYDCMPPSFSZW"));
+        Source source = new Source(chunks);
+        EnigmaProcessor processor =
+            new EnigmaProcessor(navalMachine(), "machine");
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.subscription.request(2);
+        assertEquals(2, sink.received.size());
+        Machine reference = navalMachine();
+        reference.setUp(KEY);
+        assertEquals(reference.convert("HYIHLBKOMLIUYDCMPPSFSZW"),
+                     sink.received.get(0));
+        assertEquals(sink.received.get(0), sink.received.get(1));
+        assertTrue(sink.completed);
+        assertEquals(4, pool.available());
+    }
+
+    @Test
+    public void testOnlyOneSubscriber() {
+        EnigmaProcessor processor =
+            new EnigmaProcessor(navalMachine(), "machine");
+        Sink first = new Sink(), second = new Sink();
+        processor.subscribe(first);
+        processor.subscribe(second);
+        assertNull(first.error);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testNonPositiveRequestIsAnError() {
+        ChunkPool pool = new ChunkPool(1, 8);
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        chunks.add(chunk(pool, "HELLO"));
+        Source source = new Source(chunks);
+        Machine M = navalMachine();
+        M.setUp(KEY);
+        EnigmaProcessor processor = new EnigmaProcessor(M, "machine");
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.subscription.request(0);
+        assertTrue(sink.error instanceof IllegalArgumentException);
+        assertTrue(source.cancelled);
+        assertTrue(sink.received.isEmpty());
+    }
+
+    @Test
+    public void testPoolReusesChunks() throws InterruptedException {
+        ChunkPool pool = new ChunkPool(2, 8);
+        Chunk a = pool.take(), b = pool.take();
+        assertNotSame(a, b);
+        assertNull(pool.poll());
+        a.release();
+        assertSame(a, pool.take());
+        b.release();
+        try {
+            b.release();
+            fail("double release not detected");
+        } catch (IllegalStateException excp) {
+            assertEquals(1, pool.available());
+        }
+        a.release();
+        assertEquals(2, pool.available());
+    }
+}
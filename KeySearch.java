@@ -0,0 +1,753 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Scanner;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** Resumable exhaustive key search, partitioned across worker processes
+ *  that share a search directory.  The key space (every rotor order
+ *  allowed by a configuration file, at every starting position) is split
+ *  into numbered work units of whole rotor orders.  A worker claims a
+ *  unit by creating a file in DIR/claims that names it (by process id
+ *  and host), keeps the claim alive by touching it every
+ *  CLAIM_TOUCH_MILLIS while it searches, and on finishing writes the
+ *  unit's best candidates to DIR/done atomically and removes the claim
+ *  if it still names it.  Claims whose owners on the same host have
+ *  exited, or whose owners on other hosts have not touched them for the
+ *  claim timeout, are considered abandoned and may be taken over, so a
+ *  search survives crashed workers and may be shared by workers on
+ *  several hosts that mount the same directory.  The
+ *  coordinator merges finished units into DIR/top.txt and keeps starting
+ *  workers until every unit is done; rerunning it resumes with the units
+ *  not yet done.
+ *  @author Zachary Zhang
+ */
+public final class KeySearch {
+
+    /** Perform the command in ARGS, one of
+     *      init DIR CONFIG CIPHER [--plugboard CYCLES] [--top K]
+     *           [--orders-per-unit N] [--model SAMPLE]
+     *           [--crib WORD [--crib-offset N]]
+     *           [--block N [--threads T]]
+     *          Set up a search of the ciphertext in file CIPHER using
+     *          the configuration file CONFIG, with the fixed plugboard
+     *          CYCLES (default none), keeping the K (default 20) best
+     *          candidates, with N (default 1) rotor orders per unit,
+     *          scoring by the letter frequencies of the text in file
+     *          SAMPLE (default English).  With a crib, only candidates
+     *          whose plaintext has WORD at offset N are kept, or, without
+     *          an offset, those with WORD at any offset admitted by
+     *          CribPlacer.  With a
+     *          block size, candidates are decrypted N characters at a
+     *          time by BestFirstSearch, using T (default 1) threads in
+     *          each worker, and abandoned once they cannot be among the
+     *          best; the results are the same.  The saving depends on
+     *          K: about 60% of trial characters for K = 1, but only
+     *          about 10% for the default K = 20.
+     *      run DIR [--workers W]
+     *          Run W (default: the number of processors) worker JVMs
+     *          until every unit is done, reporting progress and keeping
+     *          DIR/top.txt up to date.
+     *      work DIR
+     *          Act as a single worker until no units are left.
+     *      status DIR
+     *          Report progress and the best candidates so far.
+     *  Exits normally on success; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2) {
+                throw error("usage: KeySearch init|run|work|status DIR ...");
+            }
+            File dir = new File(args[1]);
+            switch (args[0]) {
+            case "init":
+                if (args.length < 4) {
+                    throw error("usage: KeySearch init DIR CONFIG CIPHER");
+                }
+                init(dir, new File(args[2]), new File(args[3]), args, 4);
+                break;
+            case "run":
+                new KeySearch(dir).run(args.length == 4
+                                       && args[2].equals("--workers")
+                                       ? parseInt(args[3])
+                                       : Runtime.getRuntime()
+                                       .availableProcessors());
+                break;
+            case "work":
+                new KeySearch(dir).work();
+                break;
+            case "status":
+                KeySearch search = new KeySearch(dir);
+                System.out.print(search.progress());
+                System.out.print(search.merge().format());
+                break;
+            default:
+                throw error("unknown command: %s", args[0]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Create the search directory DIR for CONFIG and CIPHER, with the
+     *  options in ARGS[START ..] (see main). */
+    static void init(File dir, File config, File cipher, String[] args,
+                     int start) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw error("could not create %s", dir);
+        }
+        Properties props = new Properties();
+        props.setProperty("plugboard", "");
+        props.setProperty("top", "20");
+        props.setProperty("ordersPerUnit", "1");
+        props.setProperty("crib", "");
+        props.setProperty("cribOffset", "");
+        props.setProperty("block", "0");
+        props.setProperty("threads", "1");
+        for (int i = start; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw error("missing value for %s", args[i]);
+            }
+            switch (args[i]) {
+            case "--plugboard":
+                props.setProperty("plugboard", args[i + 1]);
+                break;
+            case "--top":
+                props.setProperty("top", "" + parseInt(args[i + 1]));
+                break;
+            case "--orders-per-unit":
+                props.setProperty("ordersPerUnit",
+                                  "" + parseInt(args[i + 1]));
+                break;
+            case "--crib":
+                props.setProperty("crib", args[i + 1]);
+                break;
+            case "--crib-offset":
+                props.setProperty("cribOffset", "" + parseInt(args[i + 1]));
+                break;
+            case "--block":
+                props.setProperty("block", "" + parseInt(args[i + 1]));
+                break;
+            case "--threads":
+                props.setProperty("threads", "" + parseInt(args[i + 1]));
+                break;
+            case "--model":
+                copy(new File(args[i + 1]), new File(dir, MODEL));
+                break;
+            default:
+                throw error("unknown option: %s", args[i]);
+            }
+        }
+        copy(config, new File(dir, CONFIG));
+        copy(cipher, new File(dir, CIPHER));
+        try (Writer out = new FileWriter(new File(dir, PROPERTIES))) {
+            props.store(out, "key search");
+        } catch (IOException excp) {
+            throw error("could not write %s", PROPERTIES);
+        }
+        KeySearch search = new KeySearch(dir);
+        System.out.printf("%d rotor orders x %d positions in %d units%n",
+                          search._space.orders(), search._space.positions(),
+                          search._units);
+        if (search._crib != null && search._cribOffsets.length == 1) {
+            System.out.printf("crib at offset %d%n", search._cribOffsets[0]);
+        } else if (search._crib != null) {
+            System.out.printf("crib at any of %d offsets%n",
+                              search._cribOffsets.length);
+        }
+    }
+
+    /** The search set up in DIR by init. */
+    KeySearch(File dir) {
+        _dir = dir;
+        Properties props = new Properties();
+        try (Reader in = new FileReader(new File(dir, PROPERTIES))) {
+            props.load(in);
+        } catch (IOException excp) {
+            throw error("%s is not a search directory", dir);
+        }
+        try (Scanner config = new Scanner(new File(dir, CONFIG))) {
+            _machine = new Main(config, null, null).readConfig();
+        } catch (IOException excp) {
+            throw error("could not read configuration");
+        }
+        _space = new KeySpace(_machine);
+        _plugboard = props.getProperty("plugboard", "");
+        _top = parseInt(props.getProperty("top", "20"));
+        _ordersPerUnit = parseInt(props.getProperty("ordersPerUnit", "1"));
+        int block = parseInt(props.getProperty("block", "0"));
+        int threads = parseInt(props.getProperty("threads", "1"));
+        if (_top <= 0 || _ordersPerUnit <= 0 || block < 0 || threads <= 0) {
+            throw error("bad search parameters");
+        }
+        _units = (_space.orders() + _ordersPerUnit - 1) / _ordersPerUnit;
+        Alphabet alpha = _machine.alphabet();
+        _cipher = readIndices(new File(dir, CIPHER), alpha);
+        File model = new File(dir, MODEL);
+        _scorer = model.exists() ? new Scorer(alpha, readIndices(model, alpha))
+            : new Scorer(alpha);
+        String crib = props.getProperty("crib", "");
+        if (crib.isEmpty()) {
+            _crib = null;
+            _cribOffsets = new int[0];
+        } else {
+            CribPlacer placer =
+                new CribPlacer(alpha, crib, _machine.selfEncrypting());
+            String offset = props.getProperty("cribOffset", "");
+            if (offset.isEmpty()) {
+                List<CribPlacer.Placement> all = placer.place(_cipher, 0);
+                if (all.isEmpty()) {
+                    throw error("crib fits nowhere in the ciphertext");
+                }
+                _cribOffsets = new int[all.size()];
+                for (int i = 0; i < all.size(); i += 1) {
+                    _cribOffsets[i] = all.get(i).offset;
+                }
+            } else {
+                int at = parseInt(offset);
+                long[] admissible = placer.admissible(_cipher);
+                if (at < 0 || at >= admissible.length * 64
+                    || (admissible[at >>> 6] & (1L << at)) == 0) {
+                    throw error("crib cannot lie at offset %d", at);
+                }
+                _cribOffsets = new int[] { at };
+            }
+            _crib = placer.crib();
+        }
+        int end = 0;
+        for (int at : _cribOffsets) {
+            end = Math.max(end, at + _crib.length);
+        }
+        _cribPlain = new int[end];
+        _cribStarts = new boolean[end];
+        for (int at : _cribOffsets) {
+            _cribStarts[at] = true;
+        }
+        if (_crib == null) {
+            _cribScanner = null;
+        } else {
+            StringBuilder text = new StringBuilder();
+            for (int c : _crib) {
+                text.append(alpha.toChar(c));
+            }
+            _cribScanner = new CribScanner(alpha, List.of(text.toString()));
+        }
+        _bestFirst = block == 0 ? null
+            : new BestFirstSearch(_cipher, _scorer, block, threads,
+                                  _machine.selfEncrypting());
+        _claims = new File(dir, "claims");
+        _done = new File(dir, "done");
+        _claims.mkdir();
+        _done.mkdir();
+    }
+
+    /** Run WORKERS worker processes, starting them afresh whenever all
+     *  have exited, until every unit is done.  Units claimed by live
+     *  workers elsewhere are waited for until they are done or their
+     *  claims are abandoned.  Fails if a worker fails. */
+    void run(int workers) {
+        File java = new File(new File(System.getProperty("java.home"),
+                                      "bin"), "java");
+        while (unitsLeft() > 0) {
+            long left = unitsLeft();
+            ArrayList<Process> children = new ArrayList<>();
+            try {
+                for (int i = 0; i < workers; i += 1) {
+                    children.add(new ProcessBuilder(
+                        java.getPath(), "-cp",
+                        System.getProperty("java.class.path"),
+                        KeySearch.class.getName(), "work", _dir.getPath())
+                                 .inheritIO().start());
+                }
+                boolean alive = true;
+                while (alive) {
+                    alive = false;
+                    for (Process p : children) {
+                        alive |= !p.waitFor(PROGRESS_SECONDS,
+                                            TimeUnit.SECONDS);
+                    }
+                    checkpoint();
+                    System.out.print(progress());
+                }
+                for (Process p : children) {
+                    if (p.exitValue() != 0) {
+                        throw error("worker exited with code %d",
+                                    p.exitValue());
+                    }
+                }
+                if (unitsLeft() == left) {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(PROGRESS_SECONDS));
+                }
+            } catch (IOException excp) {
+                throw error("could not start workers");
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            } finally {
+                for (Process p : children) {
+                    p.destroy();
+                }
+                release(children);
+            }
+        }
+        checkpoint();
+        System.out.print(merge().format());
+    }
+
+    /** Wait briefly for each of CHILDREN to exit and remove the claims
+     *  of those that have, so that their units may be taken up again at
+     *  once. */
+    private void release(List<Process> children) {
+        for (Process p : children) {
+            try {
+                if (!p.waitFor(PROGRESS_SECONDS, TimeUnit.SECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+            String owner = p.pid() + "@" + HOST;
+            String[] names = _claims.list();
+            for (String name : names == null ? new String[0] : names) {
+                File claim = new File(_claims, name);
+                if (owner(claim).equals(owner)) {
+                    claim.delete();
+                }
+            }
+        }
+    }
+
+    /** Return the number of units not yet done. */
+    long unitsLeft() {
+        long left = 0;
+        for (long unit = 0; unit < _units; unit += 1) {
+            if (!new File(_done, "" + unit).exists()) {
+                left += 1;
+            }
+        }
+        return left;
+    }
+
+    /** Claim and search units until none are left unclaimed. */
+    void work() {
+        Timer toucher = new Timer("claims", true);
+        try {
+            for (long unit = 0; unit < _units; unit += 1) {
+                if (new File(_done, "" + unit).exists()) {
+                    continue;
+                }
+                File claim = new File(_claims, "" + unit);
+                if (!claim(claim)) {
+                    continue;
+                }
+                TimerTask touch = new TimerTask() {
+                    @Override
+                    public void run() {
+                        touch(claim);
+                    }
+                };
+                toucher.schedule(touch, CLAIM_TOUCH_MILLIS,
+                                 CLAIM_TOUCH_MILLIS);
+                TopK top = new TopK(_top);
+                try {
+                    long first = unit * _ordersPerUnit;
+                    long last =
+                        Math.min(first + _ordersPerUnit, _space.orders());
+                    for (long order = first; order < last; order += 1) {
+                        searchOrder(_space.order(order), top);
+                    }
+                } finally {
+                    touch.cancel();
+                }
+                writeAtomically(new File(_done, "" + unit), top.format());
+                unclaim(claim);
+            }
+        } finally {
+            toucher.cancel();
+        }
+    }
+
+    /** Mark CLAIM as alive by touching it, if it names me as its
+     *  owner. */
+    static void touch(File claim) {
+        if (owner(claim).equals(ME)) {
+            claim.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /** Remove CLAIM if it names me as its owner, so that a claim taken
+     *  over by another worker is left to it. */
+    static void unclaim(File claim) {
+        if (owner(claim).equals(ME)) {
+            claim.delete();
+        }
+    }
+
+    /** Try to claim a unit by creating CLAIM, which names me as its
+     *  owner, taking it over if it has been abandoned.  Return true iff
+     *  the claim succeeded. */
+    private boolean claim(File claim) {
+        for (int attempt = 0; attempt < 2; attempt += 1) {
+            try {
+                Files.write(claim.toPath(), ME.getBytes(),
+                            StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE);
+                return true;
+            } catch (FileAlreadyExistsException excp) {
+                if (!abandoned(claim)) {
+                    return false;
+                }
+                File stale = new File(claim.getPath() + "." + ME);
+                try {
+                    Files.move(claim.toPath(), stale.toPath(),
+                               StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException moved) {
+                    return false;
+                }
+                stale.delete();
+            } catch (IOException excp) {
+                throw error("could not create %s", claim);
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff CLAIM has been abandoned: its owner is a process
+     *  on this host that has exited or, if its owner is not a process on
+     *  this host, it has not been touched for CLAIM_TIMEOUT_MILLIS.  The
+     *  claims of live processes on this host are never abandoned, however
+     *  long since they were touched. */
+    static boolean abandoned(File claim) {
+        String owner = owner(claim);
+        int at = owner.indexOf('@');
+        if (at > 0 && owner.substring(at + 1).equals(HOST)) {
+            try {
+                long pid = Long.parseLong(owner.substring(0, at));
+                return !ProcessHandle.of(pid).map(ProcessHandle::isAlive)
+                    .orElse(false);
+            } catch (NumberFormatException excp) {
+                /* Not a process id: judge the claim by its age. */
+            }
+        }
+        long age = System.currentTimeMillis() - claim.lastModified();
+        return age >= CLAIM_TIMEOUT_MILLIS;
+    }
+
+    /** Return the owner named in CLAIM, as PID@HOST, or the empty string
+     *  if it names none or cannot be read. */
+    static String owner(File claim) {
+        try {
+            return new String(Files.readAllBytes(claim.toPath())).trim();
+        } catch (IOException excp) {
+            return "";
+        }
+    }
+
+    /** Offer to TOP the decryption of my ciphertext with the rotors named
+     *  NAMES at every starting position.  Successive calls share the
+     *  precomputed tables of the rotors nearest the reflector while those
+     *  rotors stay the same.  With a block size, the candidates are
+     *  scheduled by my BestFirstSearch. */
+    void searchOrder(String[] names, TopK top) {
+        Alphabet alpha = _machine.alphabet();
+        int size = alpha.size();
+        StringBuilder line = new StringBuilder("*");
+        for (String name : names) {
+            line.append(' ').append(name);
+        }
+        String prefix = line.toString();
+        StringBuilder zero = new StringBuilder();
+        for (int k = 1; k < names.length; k += 1) {
+            zero.append(alpha.toChar(0));
+        }
+        _machine.setUp(prefix + " " + zero + " " + _plugboard);
+        if (_engine == null) {
+            _engine = new PrefixEngine(_machine);
+        } else {
+            _engine.setRotors(_machine);
+        }
+        PrefixEngine engine = _engine;
+        int[] positions = engine.positions();
+        double[] weights = _scorer.weights();
+        int[] cipher = _cipher;
+        double threshold = top.threshold();
+        ArrayList<int[]> starts = new ArrayList<>();
+        while (true) {
+            boolean fits = _crib == null || cribFits(engine, positions);
+            if (fits && _bestFirst != null) {
+                starts.add(positions.clone());
+            } else if (fits) {
+                engine.setPositions(positions);
+                double score = 0;
+                for (int c : cipher) {
+                    score += weights[engine.convert(c)];
+                }
+                if (score > threshold) {
+                    top.add(score, settingsLine(prefix, positions));
+                    threshold = top.threshold();
+                }
+            }
+            int k = positions.length - 1;
+            while (k > 0 && positions[k] == size - 1) {
+                positions[k] = 0;
+                k -= 1;
+            }
+            if (k == 0) {
+                break;
+            }
+            positions[k] += 1;
+        }
+        if (_bestFirst != null) {
+            _bestFirst.search(_machine, starts, top,
+                              p -> settingsLine(prefix, p));
+        }
+    }
+
+    /** Return true iff ENGINE, started at POSITIONS, deciphers my crib
+     *  at any of my crib offsets.  With a single offset, stops at the
+     *  first mismatch; otherwise, deciphers only until my CribScanner
+     *  finds an occurrence of the crib at one of the offsets. */
+    private boolean cribFits(PrefixEngine engine, int[] positions) {
+        engine.setPositions(positions);
+        if (_cribOffsets.length == 1) {
+            int at = _cribOffsets[0];
+            for (int i = 0; i < at; i += 1) {
+                engine.advance();
+            }
+            for (int j = 0; j < _crib.length; j += 1) {
+                if (engine.convert(_cipher[at + j]) != _crib[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int[] plain = _cribPlain;
+        System.arraycopy(_cipher, 0, plain, 0, plain.length);
+        CribScanner scanner = _cribScanner;
+        scanner.reset();
+        int end = 0;
+        while (end < plain.length) {
+            end = scanner.convertAndScan(engine, plain, end, plain.length);
+            if (end < 0) {
+                return false;
+            }
+            if (_cribStarts[end - _crib.length]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the settings line consisting of PREFIX (the '*' and rotor
+     *  names), the settings of slots 1 and beyond in POSITIONS, and my
+     *  plugboard. */
+    String settingsLine(String prefix, int[] positions) {
+        Alphabet alpha = _machine.alphabet();
+        StringBuilder line = new StringBuilder(prefix).append(' ');
+        for (int k = 1; k < positions.length; k += 1) {
+            line.append(alpha.toChar(positions[k]));
+        }
+        if (!_plugboard.isEmpty()) {
+            line.append(' ').append(_plugboard);
+        }
+        return line.toString();
+    }
+
+    /** Return the best candidates among all finished units. */
+    TopK merge() {
+        TopK result = new TopK(_top);
+        String[] names = _done.list();
+        for (String name : names == null ? new String[0] : names) {
+            if (!name.endsWith(".tmp")) {
+                result.parse(read(new File(_done, name)));
+            }
+        }
+        return result;
+    }
+
+    /** Write the best candidates so far to the checkpoint file. */
+    void checkpoint() {
+        writeAtomically(new File(_dir, TOP), merge().format());
+    }
+
+    /** Return a one-line progress report. */
+    String progress() {
+        String[] done = _done.list();
+        long count = 0;
+        for (String name : done == null ? new String[0] : done) {
+            if (!name.endsWith(".tmp")) {
+                count += 1;
+            }
+        }
+        return String.format("%d of %d units done%n", count, _units);
+    }
+
+    /** Return the indices of the characters of FILE in ALPHA, ignoring
+     *  whitespace. */
+    static int[] readIndices(File file, Alphabet alpha) {
+        String text = read(file);
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (alpha.contains(ch)) {
+                result[n++] = alpha.toInt(ch);
+            } else if (!Character.isWhitespace(ch)) {
+                throw error("character %c of %s not in the alphabet", ch,
+                            file.getName());
+            }
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()));
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Replace the contents of FILE with TEXT, so that readers see either
+     *  the old or the new contents. */
+    private static void writeAtomically(File file, String text) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), text.getBytes());
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Copy FROM to TO. */
+    private static void copy(File from, File to) {
+        try {
+            to.getAbsoluteFile().getParentFile().mkdirs();
+            Files.copy(from.toPath(), to.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not copy %s", from);
+        }
+    }
+
+    /** Return S as an integer. */
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Names of files in the search directory. */
+    static final String PROPERTIES = "search.properties", CONFIG = "config",
+        CIPHER = "cipher", MODEL = "model", TOP = "top.txt";
+
+    /** Name of this host, as recorded in claims. */
+    static final String HOST = hostName();
+
+    /** Return the name of this host, or "localhost" if it is unknown. */
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException excp) {
+            return "localhost";
+        }
+    }
+
+    /** This process, as named in its claims. */
+    static final String ME = ProcessHandle.current().pid() + "@" + HOST;
+
+    /** Milliseconds after which an untouched claim is abandoned. */
+    static final long CLAIM_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    /** Milliseconds between touches of the claim being searched. */
+    static final long CLAIM_TOUCH_MILLIS = CLAIM_TIMEOUT_MILLIS / 10;
+
+    /** Seconds between progress reports. */
+    static final long PROGRESS_SECONDS = 5;
+
+    /** The search directory. */
+    private final File _dir;
+
+    /** Machine configured from the search's configuration file. */
+    private final Machine _machine;
+
+    /** The rotor orders searched. */
+    private final KeySpace _space;
+
+    /** Plugboard cycles used with every candidate. */
+    private final String _plugboard;
+
+    /** Number of candidates kept. */
+    private final int _top;
+
+    /** Number of rotor orders in each unit. */
+    private final int _ordersPerUnit;
+
+    /** Number of units. */
+    private final long _units;
+
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Crib required in candidate plaintexts, as alphabet indices, or
+     *  null if none. */
+    private final int[] _crib;
+
+    /** Offsets in the plaintext at which _crib may lie. */
+    private final int[] _cribOffsets;
+
+    /** Scratch array of the plaintext up to the end of the last crib
+     *  offset. */
+    private final int[] _cribPlain;
+
+    /** Indexed by offset in _cribPlain, true at the offsets in
+     *  _cribOffsets. */
+    private final boolean[] _cribStarts;
+
+    /** Scanner for _crib in the plaintext, or null if there is no
+     *  crib. */
+    private final CribScanner _cribScanner;
+
+    /** Scores candidate plaintexts. */
+    private final Scorer _scorer;
+
+    /** Engine used for trial decryptions, kept from one rotor order to
+     *  the next. */
+    private PrefixEngine _engine;
+
+    /** Schedules trial decryptions by block, or null if candidates are
+     *  scored completely in turn. */
+    private final BestFirstSearch _bestFirst;
+
+    /** Directory of claims on units being searched. */
+    private final File _claims;
+
+    /** Directory of results of finished units. */
+    private final File _done;
+}
@@ -0,0 +1,132 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static enigma.EnigmaException.*;
+
+/** The rotor orders of a configured machine, numbered from 0.  Slot 0
+ *  holds a reflector, the last numPawls() slots hold distinct moving
+ *  rotors, and the slots between hold distinct non-moving rotors, as a
+ *  settings line read by Main would place them.  Orders are numbered
+ *  lexicographically by the (name-sorted) rotors in slot 0, then slot 1,
+ *  and so on, so that orders with consecutive numbers tend to share
+ *  their leftmost rotors.
+ *  @author Zachary Zhang
+ */
+class KeySpace {
+
+    /** The rotor orders of machine M. */
+    KeySpace(Machine M) {
+        _numRotors = M.numRotors();
+        _pawls = M.numPawls();
+        _size = M.alphabet().size();
+        for (Rotor r : M.allRotors()) {
+            if (r.reflecting()) {
+                _reflectors.add(r.name());
+            } else if (r.rotates()) {
+                _moving.add(r.name());
+            } else {
+                _fixed.add(r.name());
+            }
+        }
+        Collections.sort(_reflectors);
+        Collections.sort(_fixed);
+        Collections.sort(_moving);
+        _radices = new int[_numRotors];
+        long count = 1;
+        for (int k = 0; k < _numRotors; k += 1) {
+            ArrayList<String> pool = pool(k);
+            _radices[k] = pool.size() - (k - firstSlot(k));
+            if (_radices[k] <= 0) {
+                throw error("not enough rotors to fill the slots");
+            }
+            count = Math.multiplyExact(count, _radices[k]);
+        }
+        _orders = count;
+    }
+
+    /** Return the number of rotor orders. */
+    long orders() {
+        return _orders;
+    }
+
+    /** Return the number of starting positions of each rotor order,
+     *  counting every setting of slots 1 and beyond. */
+    long positions() {
+        long result = 1;
+        for (int k = 1; k < _numRotors; k += 1) {
+            result = Math.multiplyExact(result, _size);
+        }
+        return result;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the names of the rotors in order number INDEX, slot 0
+     *  first. */
+    String[] order(long index) {
+        if (index < 0 || index >= _orders) {
+            throw error("rotor order out of range");
+        }
+        int[] digits = new int[_numRotors];
+        for (int k = _numRotors - 1; k >= 0; k -= 1) {
+            digits[k] = (int) (index % _radices[k]);
+            index /= _radices[k];
+        }
+        String[] result = new String[_numRotors];
+        ArrayList<String> remaining = null;
+        for (int k = 0; k < _numRotors; k += 1) {
+            if (k == firstSlot(k)) {
+                remaining = new ArrayList<>(pool(k));
+            }
+            result[k] = remaining.remove(digits[k]);
+        }
+        return result;
+    }
+
+    /** Return the rotors that may occupy slot K. */
+    private ArrayList<String> pool(int k) {
+        if (k == 0) {
+            return _reflectors;
+        } else if (k < _numRotors - _pawls) {
+            return _fixed;
+        } else {
+            return _moving;
+        }
+    }
+
+    /** Return the first slot that draws on the same pool as slot K. */
+    private int firstSlot(int k) {
+        if (k == 0) {
+            return 0;
+        } else if (k < _numRotors - _pawls) {
+            return 1;
+        } else {
+            return _numRotors - _pawls;
+        }
+    }
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Names of reflectors, fixed rotors, and moving rotors. */
+    private final ArrayList<String> _reflectors = new ArrayList<>(),
+        _fixed = new ArrayList<>(), _moving = new ArrayList<>();
+
+    /** Indexed by slot, the number of choices for that slot once the
+     *  slots to its left are filled. */
+    private final int[] _radices;
+
+    /** Number of rotor orders. */
+    private final long _orders;
+}
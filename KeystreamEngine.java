@@ -0,0 +1,373 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static enigma.EnigmaException.*;
+
+/** An engine that converts each character with a single lookup in a
+ *  table of the machine's complete substitution, plugboard included, at
+ *  every combination of settings of its rotors (other than a reflector
+ *  that does not rotate).  The table depends only on the rotor order and
+ *  the plugboard (the daily key, less the message setting), so that all
+ *  messages sent under one key share it.  It is kept in a cache
+ *  directory in a file named for the key, built by the first process
+ *  that needs it and written atomically, and mapped read-only by every
+ *  process that uses it afterwards.  Within a process, mapped tables are
+ *  also cached.
+ *  @author Zachary Zhang
+ */
+class KeystreamEngine extends Engine {
+
+    /** An engine with the rotors, plugboard, and current rotor settings
+     *  of M, which must have had its rotors and plugboard set, whose
+     *  table is kept in the directory named by the system property
+     *  enigma.keystreamCache (by default, enigma-keystream in the
+     *  temporary directory). */
+    KeystreamEngine(Machine M) {
+        this(M, defaultDirectory());
+    }
+
+    /** An engine with the rotors, plugboard, and current rotor settings
+     *  of M, which must have had its rotors and plugboard set, and
+     *  fits(M), whose table is kept in the directory DIR.  M itself is
+     *  not changed by my conversions. */
+    KeystreamEngine(Machine M, File dir) {
+        if (!fits(M)) {
+            throw error("too many rotor settings for a keystream table");
+        }
+        _alphabet = M.alphabet();
+        _size = _alphabet.size();
+        int n = M.numRotors();
+        _notches = new boolean[n][];
+        _rotates = new boolean[n];
+        _positions = new int[n];
+        _moves = new boolean[n];
+        _weights = new int[n];
+        int weight = _size;
+        for (int k = n - 1; k >= 0; k -= 1) {
+            Rotor rotor = M.rotor(k);
+            _notches[k] = new boolean[_size];
+            for (int p = 0; p < _size; p += 1) {
+                _notches[k][p] = rotor.atNotch(p);
+            }
+            _rotates[k] = rotor.rotates();
+            _positions[k] = rotor.setting();
+            if (varies(M, k)) {
+                _weights[k] = weight;
+                _index += _positions[k] * weight;
+                weight *= _size;
+            }
+        }
+        _table = table(M, dir);
+    }
+
+    /** Return true iff the table for M is small enough to build. */
+    static boolean fits(Machine M) {
+        int size = M.alphabet().size();
+        if (size > MAX_SIZE || M.plugboard() == null) {
+            return false;
+        }
+        long entries = size;
+        for (int k = 0; k < M.numRotors(); k += 1) {
+            if (varies(M, k)) {
+                entries *= size;
+                if (entries > MAX_ENTRIES) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff the setting of the rotor in slot K of M may
+     *  differ from one message to another with the same key, so that
+     *  tables cover all its settings: that is, unless it is a reflector
+     *  that does not rotate. */
+    private static boolean varies(Machine M, int k) {
+        return k > 0 || M.rotor(k).rotates();
+    }
+
+    /** Return the directory in which tables are kept by default. */
+    static File defaultDirectory() {
+        String dir = System.getProperty("enigma.keystreamCache");
+        if (dir == null) {
+            return new File(System.getProperty("java.io.tmpdir"),
+                            "enigma-keystream");
+        }
+        return new File(dir);
+    }
+
+    /** Return the table for M, mapping it from its file in DIR, and
+     *  building that first if necessary. */
+    private static ByteBuffer table(Machine M, File dir) {
+        String key = key(M);
+        ByteBuffer table = TABLES.get(key);
+        if (table == null) {
+            File file = new File(dir, name(key));
+            table = map(file, key);
+            if (table == null) {
+                build(M, dir, file, key);
+                table = map(file, key);
+                if (table == null) {
+                    throw error("could not build %s", file);
+                }
+            }
+            TABLES.put(key, table);
+        }
+        return table;
+    }
+
+    /** Return a string that identifies everything about M that its
+     *  table depends on. */
+    static String key(Machine M) {
+        int size = M.alphabet().size();
+        StringBuilder key = new StringBuilder();
+        key.append(M.alphabet());
+        for (int k = 0; k < M.numRotors(); k += 1) {
+            Rotor rotor = M.rotor(k);
+            key.append('|').append(rotor.rotates() ? 'R' : 'F');
+            if (!varies(M, k)) {
+                key.append((char) rotor.setting());
+            }
+            for (int w : rotor.wiring()) {
+                key.append((char) w);
+            }
+            for (int p = 0; p < size; p += 1) {
+                key.append(rotor.atNotch(p) ? '1' : '0');
+            }
+        }
+        key.append("|P");
+        for (int w : M.plugboard().table()) {
+            key.append((char) w);
+        }
+        return key.toString();
+    }
+
+    /** Return the name of the file holding the table for KEY. */
+    private static String name(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < NAME_BYTES; i += 1) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return name.append(".ks").toString();
+        } catch (NoSuchAlgorithmException | IOException excp) {
+            throw error("could not name keystream table: %s", excp);
+        }
+    }
+
+    /** Return the table in FILE, which must have been built for KEY, or
+     *  null if there is no such file. */
+    private static ByteBuffer map(File file, String key) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.remaining() < 12 || map.getInt() != MAGIC
+                || map.getInt() != VERSION || map.getInt() != key.length()
+                || map.remaining() < 2 * key.length() + 8) {
+                throw error("%s is not a keystream table", file);
+            }
+            for (int i = 0; i < key.length(); i += 1) {
+                if (map.getChar() != key.charAt(i)) {
+                    throw error("%s is the table of another key", file);
+                }
+            }
+            long entries = map.getLong();
+            if (entries != map.remaining()) {
+                throw error("%s is truncated", file);
+            }
+            return map.slice();
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Write the table of M, whose key is KEY, to FILE in DIR, replacing
+     *  FILE atomically so that other processes see either no table or a
+     *  complete one. */
+    private static void build(Machine M, File dir, File file, String key) {
+        int size = M.alphabet().size(), n = M.numRotors();
+        TableEngine engine = new TableEngine(M);
+        int[] positions = engine.positions();
+        int[] varying = new int[n];
+        int r = 0;
+        for (int k = 0; k < n; k += 1) {
+            if (varies(M, k)) {
+                varying[r] = k;
+                positions[k] = 0;
+                r += 1;
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(20 + 2 * key.length());
+        header.putInt(MAGIC).putInt(VERSION).putInt(key.length());
+        for (int i = 0; i < key.length(); i += 1) {
+            header.putChar(key.charAt(i));
+        }
+        File tmp;
+        try {
+            dir.mkdirs();
+            tmp = File.createTempFile("keystream", ".tmp", dir);
+        } catch (IOException excp) {
+            throw error("could not write in %s", dir);
+        }
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = out.getChannel()) {
+            byte[] block = new byte[BLOCK_STATES * size];
+            long states = 1;
+            for (int i = 0; i < r; i += 1) {
+                states *= size;
+            }
+            header.putLong(states * size).flip();
+            channel.write(header);
+            int filled = 0;
+            for (long s = 0; s < states; s += 1) {
+                engine.setPositions(positions);
+                for (int c = 0; c < size; c += 1) {
+                    block[filled * size + c] = (byte) engine.substitute(c);
+                }
+                filled += 1;
+                if (filled == BLOCK_STATES || s == states - 1) {
+                    channel.write(ByteBuffer.wrap(block, 0, filled * size));
+                    filled = 0;
+                }
+                for (int i = r - 1; i >= 0; i -= 1) {
+                    int k = varying[i];
+                    positions[k] += 1;
+                    if (positions[k] < size) {
+                        break;
+                    }
+                    positions[k] = 0;
+                }
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw error("could not write %s", tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw error("could not write %s", file);
+        }
+    }
+
+    @Override
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return a copy of the current settings of my rotors, indexed by
+     *  slot. */
+    int[] positions() {
+        return _positions.clone();
+    }
+
+    /** Advance my rotors as Machine.convert does before converting a
+     *  character. */
+    void advance() {
+        int last = _positions.length - 1;
+        boolean[] moves = _moves;
+        moves[last] = true;
+        for (int i = 0; i < last; i += 1) {
+            if (_rotates[i] && _notches[i + 1][_positions[i + 1]]) {
+                moves[i] = moves[i + 1] = true;
+            }
+        }
+        for (int i = 0; i <= last; i += 1) {
+            if (moves[i]) {
+                moves[i] = false;
+                if (_rotates[i]) {
+                    int p = _positions[i] + 1;
+                    if (p == _size) {
+                        _positions[i] = 0;
+                        _index -= (_size - 1) * _weights[i];
+                    } else {
+                        _positions[i] = p;
+                        _index += _weights[i];
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    int convert(int c) {
+        advance();
+        return _table.get(_index + c) & 0xff;
+    }
+
+    /** Identifies a keystream table. */
+    static final int MAGIC = 0x454e4b53;
+
+    /** Version of the table layout. */
+    static final int VERSION = 1;
+
+    /** Largest alphabet whose characters fit in a byte. */
+    static final int MAX_SIZE = 256;
+
+    /** Largest number of entries in a table. */
+    static final long MAX_ENTRIES = 1 << 24;
+
+    /** Number of bytes of the key's hash in a table's file name. */
+    private static final int NAME_BYTES = 16;
+
+    /** Number of rotor settings whose substitutions are written at a
+     *  time. */
+    private static final int BLOCK_STATES = 1 << 12;
+
+    /** Maximum number of tables kept mapped by a process. */
+    static final int CACHE_SIZE = 16;
+
+    /** Tables mapped by this process, by key. */
+    private static final LruCache<String, ByteBuffer> TABLES =
+        new LruCache<>(CACHE_SIZE);
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Indexed by slot and then setting, true where the rotor in that
+     *  slot is at a notch. */
+    private final boolean[][] _notches;
+
+    /** Indexed by slot, true where the rotor in that slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Current settings of my rotors, indexed by slot. */
+    private final int[] _positions;
+
+    /** Scratch array of the rotors that move on the current step. */
+    private final boolean[] _moves;
+
+    /** Indexed by slot, the amount by which _index changes when the
+     *  rotor in that slot advances by one (0 for rotors that do not
+     *  rotate). */
+    private final int[] _weights;
+
+    /** Complete substitutions: the image of C when the rotors covered
+     *  by the table have settings P1, P2, ... Pr is at ((P1 * size + P2)
+     *  * size + ... + Pr) * size + C. */
+    private final ByteBuffer _table;
+
+    /** Start of the substitution for the current settings in _table. */
+    private int _index;
+}
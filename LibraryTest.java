@@ -0,0 +1,120 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for rotor libraries.
+ *  @author Zachary Zhang
+ */
+public class LibraryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary file, deleted on exit. */
+    static File tempFile() throws IOException {
+        File file = File.createTempFile("enigma", ".lib");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBuildAndOpenRoundTrip() throws IOException {
+        File file = tempFile();
+        for (int c = 0; c < 10; c += 1) {
+            Random rand = new Random(c);
+            RandomConfig config = RandomConfig.random(rand);
+            Machine M = config.machine();
+            RotorLibrary.write(file, M.alphabet(), M.numRotors(),
+                               M.numPawls(), M.allRotors());
+            RotorLibrary lib = RotorLibrary.open(file);
+            assertEquals(M.alphabet().toString(), lib.alphabet().toString());
+            assertEquals(M.numRotors(), lib.numRotors());
+            assertEquals(M.numPawls(), lib.numPawls());
+            assertEquals(M.allRotors().size(), lib.size());
+            for (Rotor r : M.allRotors()) {
+                Rotor loaded = lib.newRotor(r.name());
+                assertEquals(r.name(), loaded.name());
+                assertEquals(r.reflecting(), loaded.reflecting());
+                assertEquals(r.rotates(), loaded.rotates());
+                assertArrayEquals(r.permutation().table(),
+                                  loaded.permutation().table());
+                for (int p = 0; p < r.size(); p += 1) {
+                    assertEquals(r.atNotch(p), loaded.atNotch(p));
+                }
+            }
+            assertNull(lib.newRotor("no such rotor"));
+            String settings = config.settingsLine(3, true, true);
+            Machine fromLibrary = lib.machine();
+            M.setUp(settings);
+            fromLibrary.setUp(settings);
+            for (int i = 0; i < 500; i += 1) {
+                int ch = config.randomIndex();
+                assertEquals(M.convert(ch), fromLibrary.convert(ch));
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testWiringsAreInterned() throws IOException {
+        File file = tempFile();
+        RotorLibrary.synthesize(file, 40, 50, 7, new Random(0));
+        RotorLibrary lib = RotorLibrary.open(file);
+        assertEquals(50, lib.size());
+        assertEquals(7, lib.wiringCount());
+        Rotor first = lib.newRotor("R3"), again = lib.newRotor("R3");
+        assertNotSame(first, again);
+        assertSame(first.permutation(), again.permutation());
+        assertSame(first.permutation(), lib.newRotor("R10").permutation());
+        assertNotSame(first.permutation(),
+                      lib.newRotor("R4").permutation());
+        assertFalse(Arrays.equals(first.permutation().table(),
+                                  lib.newRotor("R4").permutation()
+                                  .table()));
+        file.delete();
+    }
+
+    @Test
+    public void testOnlyLibrariesAreDetected() throws IOException {
+        File file = tempFile();
+        RotorLibrary.synthesize(file, 26, 10, 10, new Random(1));
+        assertTrue(RotorLibrary.isLibrary(file));
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(RotorLibrary.HDR_VERSION);
+            out.writeInt(RotorLibrary.VERSION + 1);
+        }
+        assertFalse(RotorLibrary.isLibrary(file));
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(RotorLibrary.HDR_VERSION);
+            out.writeInt(RotorLibrary.VERSION);
+            out.setLength(RotorLibrary.HEADER_LENGTH - 1);
+        }
+        assertFalse(RotorLibrary.isLibrary(file));
+        Files.write(file.toPath(), ("ENRLABCDFGHIJKMOPQSTUVWXYZ\n 3 1\n"
+                                    + " R R (EN) (RL) (AB) (CD) (FG) (HI) "
+                                    + "(JK) (MO) (PQ) (ST) (UV) (WX) (YZ)\n"
+                                    + " F N (ENRLA)\n"
+                                    + " M MA (BCD)\n").getBytes("US-ASCII"));
+        assertFalse(RotorLibrary.isLibrary(file));
+        Machine M = new Main(new String[] { file.getPath() }).readConfig();
+        assertEquals(26, M.alphabet().size());
+        M.setUp("* R F M AA");
+        assertEquals(3, M.numRotors());
+        file.delete();
+    }
+}
@@ -0,0 +1,298 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** End-to-end load generator and macro-benchmark.  Synthesizes a
+ *  configuration file and a large input file in the formats read by
+ *  Main, then runs Main on them in a fresh JVM once per engine,
+ *  reporting wall time, characters per second, peak resident set size,
+ *  and garbage-collection activity.
+ *  @author Zachary Zhang
+ */
+public final class LoadGen {
+
+    /** Perform the command given by ARGS, one of
+     *      generate DIR [--size N] [--rotors N] [--pawls N] [--lines N]
+     *               [--settings-every N] [--min-length N]
+     *               [--max-length N] [--blank-fraction F] [--seed N]
+     *          Write DIR/load.conf, with an alphabet of N characters
+     *          (default 26), N rotor slots (5) and N pawls (3), and
+     *          DIR/load.in with N lines (100000), on average one settings
+     *          line per N message lines (20), message lines of between N
+     *          (1) and N (100) characters, and a fraction F of blank
+     *          lines (0.05).
+     *      run DIR [--engines A,B,...] [--repeat N] [--heap SIZE]
+     *          Run Main with each engine (default all of Engine.NAMES)
+     *          N times (default 3) on the files in DIR, each in a new JVM
+     *          with maximum heap SIZE (default 512m), and report.
+     *  Exits normally on success; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 2 && args[0].equals("generate")) {
+                generate(new File(args[1]), options(args, 2));
+            } else if (args.length >= 2 && args[0].equals("run")) {
+                run(new File(args[1]), options(args, 2));
+            } else if (args.length == 3 && args[0].equals("child")) {
+                child(new File(args[1]), new File(args[2]));
+            } else {
+                throw error("usage: LoadGen generate DIR [options] | "
+                            + "LoadGen run DIR [options]");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return ARGS[START ..] as alternating option names and values,
+     *  checking that each name starts with "--". */
+    private static List<String> options(String[] args, int start) {
+        List<String> result =
+            Arrays.asList(args).subList(start, args.length);
+        for (int i = 0; i < result.size(); i += 2) {
+            if (!result.get(i).startsWith("--") || i + 1 == result.size()) {
+                throw error("bad option: %s", result.get(i));
+            }
+        }
+        return result;
+    }
+
+    /** Return the value of option NAME in OPTS, or DEFLT if absent. */
+    private static String option(List<String> opts, String name,
+                                 String deflt) {
+        for (int i = 0; i < opts.size(); i += 2) {
+            if (opts.get(i).equals("--" + name)) {
+                return opts.get(i + 1);
+            }
+        }
+        return deflt;
+    }
+
+    /** Return the integer value of option NAME in OPTS, or DEFLT. */
+    private static int intOption(List<String> opts, String name, int deflt) {
+        try {
+            return Integer.parseInt(option(opts, name, "" + deflt));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for --%s", name);
+        }
+    }
+
+    /** Write load.conf and load.in into DIR as directed by OPTS (see
+     *  main). */
+    static void generate(File dir, List<String> opts) {
+        int size = intOption(opts, "size", 26);
+        int numRotors = intOption(opts, "rotors", 5);
+        int pawls = intOption(opts, "pawls", 3);
+        int lines = intOption(opts, "lines", 100_000);
+        int every = intOption(opts, "settings-every", 20);
+        int minLength = intOption(opts, "min-length", 1);
+        int maxLength = intOption(opts, "max-length", 100);
+        int seed = intOption(opts, "seed", 1);
+        double blanks;
+        try {
+            blanks = Double.parseDouble(option(opts, "blank-fraction",
+                                               "0.05"));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for --blank-fraction");
+        }
+        if (every < 1 || minLength < 1 || maxLength < minLength) {
+            throw error("bad message shape");
+        }
+        Random rand = new Random(seed);
+        RandomConfig config =
+            new RandomConfig(rand, size, numRotors, pawls, 2, false);
+        Alphabet alpha = config.alphabet();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw error("could not create %s", dir);
+        }
+        try (Writer conf = new FileWriter(new File(dir, CONFIG_NAME));
+             Writer in = new BufferedWriter(
+                 new FileWriter(new File(dir, INPUT_NAME)))) {
+            conf.write(config.configText());
+            long chars = 0;
+            for (int n = 0; n < lines; n += 1) {
+                if (n == 0 || rand.nextInt(every + 1) == 0) {
+                    in.write(config.settingsLine(rand.nextInt(size / 2 + 1),
+                                                 false));
+                } else if (rand.nextDouble() >= blanks) {
+                    int len = minLength
+                        + rand.nextInt(maxLength - minLength + 1);
+                    for (int i = 0; i < len; i += 1) {
+                        if (i > 0 && i % 5 == 0) {
+                            in.write(' ');
+                        }
+                        in.write(alpha.toChar(config.randomIndex()));
+                    }
+                    chars += len;
+                }
+                in.write('\n');
+            }
+            System.out.printf("wrote %s and %s: %d lines, %d characters%n",
+                              CONFIG_NAME, INPUT_NAME, lines, chars);
+        } catch (IOException excp) {
+            throw error("could not write to %s", dir);
+        }
+    }
+
+    /** Run Main on the files in DIR in child JVMs as directed by OPTS (see
+     *  main), and print a report. */
+    static void run(File dir, List<String> opts) {
+        String[] engines = option(opts, "engines",
+                                  String.join(",", Engine.NAMES)).split(",");
+        int repeat = intOption(opts, "repeat", 3);
+        String heap = option(opts, "heap", "512m");
+        File java = new File(new File(System.getProperty("java.home"),
+                                      "bin"), "java");
+        System.out.printf("%-10s %9s %9s %12s %14s %9s %7s %9s%n",
+                          "engine", "wall s", "run s", "chars",
+                          "chars/s", "rss MB", "gcs", "gc ms");
+        Machine check = placeholder();
+        for (String engine : engines) {
+            Engine.forName(engine, check);
+        }
+        for (String engine : engines) {
+            for (int r = 0; r < repeat; r += 1) {
+                ProcessBuilder builder = new ProcessBuilder(
+                    java.getPath(), "-Xmx" + heap,
+                    "-Denigma.engine=" + engine,
+                    "-cp", System.getProperty("java.class.path"),
+                    LoadGen.class.getName(), "child",
+                    new File(dir, CONFIG_NAME).getPath(),
+                    new File(dir, INPUT_NAME).getPath());
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                long start = System.nanoTime();
+                String report;
+                try {
+                    Process child = builder.start();
+                    try (BufferedReader out = new BufferedReader(
+                             new InputStreamReader(child.getInputStream()))) {
+                        report = out.readLine();
+                    }
+                    if (child.waitFor() != 0 || report == null) {
+                        throw error("run of engine %s failed", engine);
+                    }
+                } catch (IOException excp) {
+                    throw error("could not start %s", java);
+                } catch (InterruptedException excp) {
+                    throw error("interrupted");
+                }
+                double wall = (System.nanoTime() - start) / 1e9;
+                Scanner fields = new Scanner(report);
+                double seconds = fields.nextDouble();
+                long chars = fields.nextLong();
+                long rss = fields.nextLong();
+                long gcs = fields.nextLong();
+                long gcMillis = fields.nextLong();
+                System.out.printf("%-10s %9.3f %9.3f %12d %14.0f %9s %7d "
+                                  + "%9d%n", engine, wall, seconds, chars,
+                                  chars / seconds,
+                                  rss < 0 ? "?" : String.format("%.1f",
+                                                                rss / 1024.0),
+                                  gcs, gcMillis);
+            }
+        }
+    }
+
+    /** Return a machine for checking engine names before starting child
+     *  JVMs. */
+    private static Machine placeholder() {
+        RandomConfig config = new RandomConfig(new Random(0), 2, 2, 1, 0,
+                                               false);
+        Machine M = config.machine();
+        M.setUp(config.settingsLine(0, false));
+        return M;
+    }
+
+    /** Run Main on CONFIG and INPUT, discarding its output, and print one
+     *  line giving the elapsed seconds, the number of characters output,
+     *  the peak resident set size in KB (or -1 if unknown), and the
+     *  number and total milliseconds of garbage collections. */
+    static void child(File config, File input) {
+        CountingStream counter = new CountingStream();
+        long start = System.nanoTime();
+        try (Scanner conf = new Scanner(config);
+             Scanner in = new Scanner(input);
+             PrintStream out = new PrintStream(counter)) {
+            Main main = new Main(conf, in, out);
+            main.process(main.readConfig());
+        } catch (IOException excp) {
+            throw error("could not open input files");
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long gcs = 0, gcMillis = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcs += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        System.out.printf("%.6f %d %d %d %d%n", seconds, counter.count(),
+                          peakRss(), gcs, gcMillis);
+    }
+
+    /** Return the peak resident set size of this process in KB, or -1 if
+     *  it is unavailable. */
+    private static long peakRss() {
+        try {
+            for (String line
+                     : Files.readAllLines(new File("/proc/self/status")
+                                          .toPath())) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /** An output stream that discards its output, counting the bytes
+     *  other than blanks and line terminators. */
+    private static final class CountingStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            if (b != ' ' && b != '\n' && b != '\r') {
+                _count += 1;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i += 1) {
+                write(b[i]);
+            }
+        }
+
+        /** Return the number of bytes counted. */
+        long count() {
+            return _count;
+        }
+
+        /** Number of bytes counted. */
+        private long _count;
+    }
+
+    /** Name of the generated configuration file. */
+    static final String CONFIG_NAME = "load.conf";
+
+    /** Name of the generated input file. */
+    static final String INPUT_NAME = "load.in";
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded map from keys to values that discards its least recently
+ *  used entry once it holds more than its capacity, and that counts
+ *  how many lookups it could and could not satisfy.
+ *  @author Zachary Zhang
+ */
+class LruCache<K, V> {
+
+    /** A new, empty cache holding at most CAPACITY > 0 entries. */
+    LruCache(int capacity) {
+        if (capacity <= 0) {
+            throw error("cache capacity must be positive");
+        }
+        _capacity = capacity;
+        _entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return the value cached under KEY, or null if there is none,
+     *  marking KEY as most recently used. */
+    synchronized V get(K key) {
+        V value = _entries.get(key);
+        if (value == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return value;
+    }
+
+    /** Cache VALUE under KEY, evicting the least recently used entry
+     *  if I am full. */
+    synchronized void put(K key, V value) {
+        _entries.put(key, value);
+    }
+
+    /** Remove all my entries.  My counters are not reset. */
+    synchronized void clear() {
+        _entries.clear();
+    }
+
+    /** Return the number of entries I currently hold. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the maximum number of entries I hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of lookups that found an entry. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found no entry. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d/%d entries, %d hits, %d misses",
+                             _entries.size(), _capacity, _hits, _misses);
+    }
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+
+    /** Cached entries, in access order. */
+    private final LinkedHashMap<K, V> _entries;
+
+    /** Number of successful lookups. */
+    private long _hits;
+
+    /** Number of unsuccessful lookups. */
+    private long _misses;
+}
@@ -2,13 +2,14 @@ package enigma;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import static enigma.EnigmaException.*;
 
 /** Class that represents a complete enigma machine.
  *  @author Zachary Zhang
  */
-class Machine {
+class Machine extends Engine {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
@@ -20,6 +21,22 @@ class Machine {
         _pawls = pawls;
         _allRotors = allRotors;
         _rotorsList = new ArrayList<Rotor>();
+        _prepared = new LruCache<>(SETTINGS_CACHE_SIZE);
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  in LIBRARY.  Rotors are materialized from LIBRARY only when a
+     *  settings line first names them. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorLibrary library) {
+        this(alpha, numRotors, pawls, new ArrayList<Rotor>());
+        _library = library;
+        _loaded = new HashMap<>();
+    }
+
+    @Override
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -34,20 +51,43 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting and 0 ring
+     *  setting. */
     void insertRotors(String[] rotors) {
+        findRotors(rotors, _rotorsList);
+        for (Rotor rotor : _rotorsList) {
+            rotor.setRing(0);
+        }
+    }
+
+    /** Append the rotors named ROTORS from my set of available rotors
+     *  to STACK, checking that no rotor appears in STACK twice. */
+    private void findRotors(String[] rotors, ArrayList<Rotor> stack) {
         for (String rotor: rotors) {
-            for (Rotor r : _rotorsList) {
+            for (Rotor r : stack) {
                 if (r.name().equals(rotor)) {
                     throw new EnigmaException("duplicate name");
                 }
             }
 
 
+            if (_library != null) {
+                Rotor temp = _loaded.get(rotor);
+                if (temp == null) {
+                    temp = _library.newRotor(rotor);
+                    if (temp == null) {
+                        throw new EnigmaException("bad name");
+                    }
+                    _loaded.put(rotor, temp);
+                }
+                stack.add(temp);
+                continue;
+            }
+
             boolean haveSameName = false;
             for (Rotor temp: _allRotors) {
                 if (rotor.equals(temp.name())) {
-                    _rotorsList.add(temp);
+                    stack.add(temp);
                     haveSameName = true;
                 }
             }
@@ -74,6 +114,118 @@ class Machine {
         }
     }
 
+    /** Set my rotors' ring settings according to RINGS, which must be a
+     *  string of numRotors()-1 characters in my alphabet, the first for
+     *  the leftmost rotor (not counting the reflector).  The rotors'
+     *  wiring tables are recomputed for the new ring settings. */
+    void setRings(String rings) {
+        if (rings.length() != _numRotors - 1) {
+            throw error("wrong number of ring settings");
+        }
+        for (int i = 0; i < rings.length(); i += 1) {
+            char ch = rings.charAt(i);
+            if (!_alphabet.contains(ch)) {
+                throw error("ring setting not in the alphabet");
+            }
+            _rotorsList.get(i + 1).setRing(_alphabet.toInt(ch));
+        }
+    }
+
+    /** Set my rotors and plugboard according to SETTINGS, a settings
+     *  line of the form "* R0 R1 ... SETTING [RINGS] CYCLES..." naming
+     *  numRotors() rotors (R0 names the reflector), their initial
+     *  setting, optionally their ring settings (by default, all the
+     *  first character of the alphabet), and the plugboard cycles.
+     *  Empty words, as between two blanks, are skipped before RINGS.  The
+     *  rotor stack and compiled plugboard for a given rotor order and
+     *  plugboard are prepared once and then reused from my cache, so
+     *  that a repeated settings line costs only a lookup and the setting
+     *  of the rotor positions and rings.  Ring settings are folded into
+     *  the rotors' wiring tables here, not applied per character. */
+    void setUp(String settings) {
+        String[] setting = settings.split(" ");
+        if (setting.length < _numRotors + 2) {
+            throw new EnigmaException("Setting size shorter");
+        }
+        int cyclesStart = _numRotors + 2;
+        while (cyclesStart < setting.length
+               && setting[cyclesStart].isEmpty()) {
+            cyclesStart += 1;
+        }
+        String rings = null;
+        if (cyclesStart < setting.length
+            && !setting[cyclesStart].startsWith("(")) {
+            rings = setting[cyclesStart];
+            cyclesStart += 1;
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 1; i < setting.length; i += 1) {
+            if (i <= _numRotors || i >= cyclesStart) {
+                key.append(setting[i]).append(' ');
+            }
+        }
+        String cacheKey = key.toString();
+        PreparedSettings prepared = _prepared.get(cacheKey);
+        if (prepared == null) {
+            String[] names = new String[_numRotors];
+            System.arraycopy(setting, 1, names, 0, _numRotors);
+            ArrayList<Rotor> stack = new ArrayList<>();
+            findRotors(names, stack);
+            String cycles = "";
+            for (int i = cyclesStart; i < setting.length; i++) {
+                cycles += (setting[i] + " ");
+            }
+            prepared = new PreparedSettings(stack,
+                                            new Permutation(cycles,
+                                                            _alphabet));
+            _prepared.put(cacheKey, prepared);
+        }
+        _rotorsList = new ArrayList<>(prepared.rotors);
+        if (rings == null) {
+            for (Rotor rotor : _rotorsList) {
+                rotor.setRing(0);
+            }
+        } else {
+            setRings(rings);
+        }
+        setRotors(setting[_numRotors + 1]);
+        setPlugboard(prepared.plugboard);
+    }
+
+    /** Return the cache of rotor stacks and plugboards prepared by
+     *  setUp, whose hit and miss counts measure its effectiveness. */
+    LruCache<String, PreparedSettings> settingsCache() {
+        return _prepared;
+    }
+
+    /** Return all my available rotors.  For a machine whose rotors come
+     *  from a library, these are only the rotors loaded so far. */
+    Collection<Rotor> allRotors() {
+        return _library == null ? _allRotors : _loaded.values();
+    }
+
+    /** Return true iff one of my available reflectors has a fixed
+     *  point, so that with it in place I convert some character to
+     *  itself. */
+    boolean selfEncrypting() {
+        for (Rotor r : allRotors()) {
+            if (r.reflecting() && !r.permutation().derangement()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the rotor in slot K, where slot 0 holds the reflector. */
+    Rotor rotor(int k) {
+        return _rotorsList.get(k);
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
@@ -82,7 +234,7 @@ class Machine {
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
-
+    @Override
     int convert(int c) {
 
         boolean[] moveable = new boolean[_numRotors];
@@ -107,11 +259,28 @@ class Machine {
             convert = _rotorsList.get(j).convertBackward(convert);
         }
         convert = _plugboard.invert(convert);
+        if (_trace != null) {
+            _trace.record(this, c, convert);
+        }
         return convert;
     }
 
+    @Override
+    boolean canTrace() {
+        return true;
+    }
+
+    @Override
+    void trace(TraceRecorder recorder) {
+        if (recorder != null && recorder.slots() != _numRotors) {
+            throw error("trace has the wrong number of slots");
+        }
+        _trace = recorder;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
+    @Override
     String convert(String msg) {
         String update = "";
         msg = msg.replace(" ", "");
@@ -126,6 +295,19 @@ class Machine {
         return update;
     }
 
+    /** Return a new machine with my configuration and with copies of all
+     *  my available rotors, so that it may be used independently of me. */
+    Machine copy() {
+        if (_library != null) {
+            return new Machine(_alphabet, _numRotors, _pawls, _library);
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _allRotors) {
+            rotors.add(r.copy());
+        }
+        return new Machine(_alphabet, _numRotors, _pawls, rotors);
+    }
+
     /** Clear rotor information. */
     public void clearRotor() {
         _rotorsList = new ArrayList<Rotor>();
@@ -144,9 +326,44 @@ class Machine {
     /** Collection of rotors. */
     private Collection<Rotor> _allRotors;
 
+    /** Library from which rotors are loaded, or null if they are all in
+     *  _allRotors. */
+    private RotorLibrary _library;
+
+    /** Rotors loaded from _library so far, by name. */
+    private HashMap<String, Rotor> _loaded;
+
     /** List of rotors. */
     private ArrayList<Rotor> _rotorsList;
 
     /** Permutation of the rotors. */
     private Permutation _plugboard;
+
+    /** Recorder of my conversions, or null. */
+    private TraceRecorder _trace;
+
+    /** Maximum number of distinct rotor orders and plugboards whose
+     *  preparation setUp remembers. */
+    static final int SETTINGS_CACHE_SIZE = 256;
+
+    /** Rotor stacks and plugboards prepared by setUp, keyed by rotor
+     *  order and plugboard cycles. */
+    private final LruCache<String, PreparedSettings> _prepared;
+
+    /** A rotor stack and compiled plugboard prepared from a settings
+     *  line. */
+    static final class PreparedSettings {
+        /** A preparation of the rotors ROTORS, leftmost (reflector)
+         *  first, with plugboard PLUGBOARD. */
+        PreparedSettings(ArrayList<Rotor> rotors, Permutation plugboard) {
+            this.rotors = rotors;
+            this.plugboard = plugboard;
+        }
+
+        /** The rotors in slot order. */
+        final ArrayList<Rotor> rotors;
+
+        /** The plugboard. */
+        final Permutation plugboard;
+    }
 }
@@ -0,0 +1,118 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Zachary Zhang
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 5-slot, 3-pawl machine over the upper-case alphabet
+     *  using the naval rotors. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"), UPPER)));
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.add(new FixedRotor("Gamma",
+                                  new Permutation(NAVALA.get("Gamma"),
+                                                  UPPER)));
+        String[] moving = { "I", "II", "III", "IV", "V" };
+        String[] notches = { "Q", "E", "V", "J", "Z" };
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                                       new Permutation(NAVALA.get(moving[i]),
+                                                       UPPER),
+                                       notches[i]));
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSetUpMatchesInsertRotors() {
+        Machine cached = navalMachine();
+        Machine plain = navalMachine();
+        cached.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        plain.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        plain.setRotors("AXLE");
+        plain.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        String msg = "HYIHLBKOMLIUYDCMPPSFSZWFROMHISSHOULDER";
+        assertEquals(plain.convert(msg), cached.convert(msg));
+    }
+
+    @Test
+    public void testRingSettings() {
+        Machine M = navalMachine();
+        M.setUp("* B Beta I II III AAAA ABBB");
+        assertEquals("EWTYX", M.convert("AAAAA"));
+        M.setUp("* B Beta I II III AAAA");
+        assertEquals("BDZGO", M.convert("AAAAA"));
+        M.setUp("* B Beta I II III AAAA  (AB)");
+        assertEquals("BJLC", M.convert("AAAA"));
+        M.setUp("* B Beta I II III AAAA  ABBB  (AB)");
+        String spaced = M.convert("HELLOWORLD");
+        M.setUp("* B Beta I II III AAAA ABBB (AB)");
+        assertEquals(M.convert("HELLOWORLD"), spaced);
+        for (String name : Engine.NAMES) {
+            Machine reference = navalMachine();
+            Machine source = navalMachine();
+            reference.setUp("* B Beta III IV I AXLE QDMR (YF) (ZH)");
+            source.setUp("* B Beta III IV I AXLE QDMR (YF) (ZH)");
+            Engine engine = Engine.forName(name, source);
+            String msg = "HYIHLBKOMLIUYDCMPPSFSZWFROMHISSHOULDER";
+            for (int i = 0; i < 20; i += 1) {
+                assertEquals(name, reference.convert(msg),
+                             engine.convert(msg));
+            }
+        }
+    }
+
+    @Test
+    public void testSettingsCacheCounts() {
+        Machine M = navalMachine();
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        String first = M.convert("HELLOWORLD");
+        M.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        assertEquals(first, M.convert("HELLOWORLD"));
+        M.setUp("* B Beta III IV I QRST (YF) (ZH)");
+        M.setUp("* C Gamma I II V AAAA");
+        LruCache<String, Machine.PreparedSettings> cache = M.settingsCache();
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLruEviction() {
+        LruCache<String, Integer> cache = new LruCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("c", 3);
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSetUpBadName() {
+        navalMachine().setUp("* B Beta III IV Nope AXLE");
+    }
+
+}
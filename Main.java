@@ -19,13 +19,24 @@ public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
+     *  ARGS[0] is the name of a configuration file, which may also be a
+     *  rotor library written by RotorLibrary.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  The system property enigma.engine, if set,
+     *  names the engine (one of Engine.NAMES) used for conversion.  The
+     *  property enigma.trace, if set, names a file to which the engine
+     *  records the rotor settings of the last enigma.traceSize (default
+     *  TraceRecorder.DEFAULT_CAPACITY) characters converted, as read by
+     *  TraceReader, together with each settings line.  Engines that
+     *  cannot record traces (the compiled and keystream engines) are
+     *  replaced by the table engine while tracing.  The trace is written
+     *  out even if processing fails.  Engines record a line's
+     *  conversions as one batch, so that tracing costs little next to
+     *  reading and writing the messages. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -42,7 +53,11 @@ public final class Main {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        if (RotorLibrary.isLibrary(new File(args[0]))) {
+            _library = RotorLibrary.open(new File(args[0]));
+        } else {
+            _config = getInput(args[0]);
+        }
 
         if (args.length > 1) {
             _input = getInput(args[1]);
@@ -57,6 +72,15 @@ public final class Main {
         }
     }
 
+    /** A processor that reads its configuration from CONFIG and its
+     *  messages from INPUT, and writes to OUTPUT.  Any of these may be
+     *  null if the corresponding operation is not used. */
+    Main(Scanner config, Scanner input, PrintStream output) {
+        _config = config;
+        _input = input;
+        _output = output;
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -79,31 +103,84 @@ public final class Main {
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        Machine enigma = readConfig();
+        process(readConfig());
+    }
+
+    /** Apply the machine ENIGMA to the messages in _input, sending the
+     *  results to _output. */
+    void process(Machine enigma) {
         String next = _input.nextLine();
         if (next.charAt(0) != '*') {
             throw new EnigmaException("Not start with *");
         }
         setUp(enigma, next);
-        while (_input.hasNextLine()) {
-            String nextLine = _input.nextLine();
-            if (nextLine.isEmpty()) {
-                _output.println();
-                continue;
+        TraceRecorder trace = null;
+        if (_traceName != null) {
+            int capacity = Integer.getInteger("enigma.traceSize",
+                                              TraceRecorder.DEFAULT_CAPACITY);
+            trace = new TraceRecorder(new File(_traceName),
+                                      enigma.numRotors(),
+                                      enigma.alphabet().size(), capacity);
+        }
+        Engine engine = engine(enigma, next, trace);
+        try {
+            while (_input.hasNextLine()) {
+                String nextLine = _input.nextLine();
+                if (nextLine.isEmpty()) {
+                    _output.println();
+                    continue;
+                }
+                if (nextLine.contains("*")) {
+                    setUp(enigma, nextLine);
+                    engine = engine(enigma, nextLine, trace);
+                    continue;
+                }
+                printMessageLine(engine.convert(nextLine));
             }
-            if (nextLine.contains("*")) {
-                enigma.clearRotor();
-                setUp(enigma, nextLine);
+        } finally {
+            if (trace != null) {
+                trace.close();
+            }
+        }
+    }
 
-                continue;
+    /** Return the engine for ENIGMA, just set up by the settings line
+     *  SETTINGS, recording its conversions and SETTINGS in TRACE unless
+     *  TRACE is null.  When tracing, an engine that cannot record traces
+     *  is replaced by a table engine. */
+    private Engine engine(Machine enigma, String settings,
+                          TraceRecorder trace) {
+        Engine engine = Engine.forName(_engineName, enigma);
+        if (trace != null) {
+            if (!engine.canTrace()) {
+                engine = new TableEngine(enigma);
             }
-            printMessageLine(enigma.convert(nextLine));
+            engine.trace(trace);
+            trace.settings(settings);
         }
+        return engine;
+    }
+
+    /** Convert messages in process with the engine called NAME (one of
+     *  Engine.NAMES), in place of the one named by the system property
+     *  enigma.engine. */
+    void setEngineName(String name) {
+        _engineName = name;
+    }
+
+    /** Record the conversions of process in the trace file NAME, or in
+     *  none if NAME is null, in place of the file named by the system
+     *  property enigma.trace. */
+    void setTraceName(String name) {
+        _traceName = name;
     }
 
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
-    private Machine readConfig() {
+    Machine readConfig() {
+        if (_library != null) {
+            return _library.machine();
+        }
         try {
             ArrayList<Rotor> allRotors = new ArrayList<>();
             String temp = _config.nextLine();
@@ -171,29 +248,14 @@ public final class Main {
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
     private void setUp(Machine M, String settings) {
-        String [] setting = settings.split(" ");
-        String [] newSetting = new String[M.numRotors()];
-        if (setting.length < M.numRotors()) {
-            throw new EnigmaException("Setting size shorter");
-        }
-        for (int i = 0; i < M.numRotors(); i++) {
-            newSetting[i] = setting[i + 1];
-        }
-        M.insertRotors(newSetting);
-        String reflector = "";
-        for (int i = M.numRotors() + 2; i < setting.length; i++) {
-            reflector += (setting[i] + " ");
-        }
-        Permutation permute1 = new Permutation(reflector, _alphabet);
-        M.setRotors(setting[M.numRotors() + 1]);
-        M.setPlugboard(permute1);
+        M.setUp(settings);
     }
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
         if (msg.isEmpty()) {
-            System.out.println();
+            _output.println();
         }
         for (int i = 0; i < msg.length(); i++) {
             if (i > 0 && i % 5 == 0) {
@@ -216,6 +278,16 @@ public final class Main {
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** Name of the engine used for conversion. */
+    private String _engineName = System.getProperty("enigma.engine",
+                                                    "machine");
+
+    /** Name of the file to which conversions are traced, or null. */
+    private String _traceName = System.getProperty("enigma.trace");
+
+    /** Rotor library used in place of _config, or null. */
+    private RotorLibrary _library;
+
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
@@ -15,6 +15,10 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchTable = new boolean[size()];
+        for (int i = 0; i < notches.length(); i++) {
+            _notchTable[alphabet().toInt(notches.charAt(i))] = true;
+        }
     }
 
     @Override
@@ -23,13 +27,13 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i)) == setting()) {
-                return true;
-            }
-        }
-        return false;
+    boolean atNotch(int posn) {
+        return _notchTable[posn];
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), permutation(), _notches);
     }
 
     @Override
@@ -39,4 +43,7 @@ class MovingRotor extends Rotor {
 
     /** Notch of rotor.*/
     private String _notches;
+
+    /** Indexed by setting, true at each setting that is a notch. */
+    private boolean[] _notchTable;
 }
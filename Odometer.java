@@ -0,0 +1,221 @@
+package enigma;
+
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** Computes the rotor settings of a machine after any number of steps
+ *  without performing the steps one at a time.
+ *
+ *  Call a step simple if the only rotors that move on it are the
+ *  rightmost one and (when the rightmost is at a notch) its left
+ *  neighbor.  During a run of simple steps the rotors in slots 0 .. m-2
+ *  (where m is the last slot) stand still, and the settings of the last
+ *  two slots are given in closed form by counting the notches of slot m
+ *  passed over.  A run ends only when slot m-1 reaches one of its own
+ *  notches, which takes on the order of size^2 steps, after which a
+ *  single step is performed exactly.  Because the settings repeat with
+ *  a period no longer than the number of distinct settings, the states
+ *  at the start of these exact steps are remembered so that whole
+ *  periods can be skipped as soon as one repeats.
+ *  @author Zachary Zhang
+ */
+class Odometer {
+
+    /** An odometer for the rotors of M, which must have had its rotors
+     *  set.  Later changes to M do not affect me. */
+    Odometer(Machine M) {
+        _size = M.alphabet().size();
+        int n = M.numRotors();
+        _notches = new boolean[n][];
+        _rotates = new boolean[n];
+        for (int k = 0; k < n; k += 1) {
+            Rotor rotor = M.rotor(k);
+            _notches[k] = new boolean[_size];
+            for (int p = 0; p < _size; p += 1) {
+                _notches[k][p] = rotor.atNotch(p);
+            }
+            _rotates[k] = rotor.rotates();
+        }
+        int count = 0;
+        for (int p = 0; n > 0 && p < _size; p += 1) {
+            count += _notches[n - 1][p] ? 1 : 0;
+        }
+        _lastNotches = count;
+        long states = 1;
+        for (int k = 0; k < n && states > 0; k += 1) {
+            states = states > Long.MAX_VALUE / _size ? -1 : states * _size;
+        }
+        _encodable = states > 0;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _rotates.length;
+    }
+
+    /** Set POSITIONS, the settings of my rotors indexed by slot, to their
+     *  values after STEPS >= 0 further steps. */
+    void advance(int[] positions, long steps) {
+        if (positions.length != _rotates.length) {
+            throw error("wrong number of rotor positions");
+        }
+        if (steps < 0) {
+            throw error("cannot step backwards");
+        }
+        int m = positions.length - 1;
+        if (m == 0) {
+            if (_rotates[0]) {
+                positions[0] = (int) ((positions[0] + steps) % _size);
+            }
+            return;
+        }
+        HashMap<Long, Long> seen = _encodable ? new HashMap<>() : null;
+        long remaining = steps;
+        while (remaining > 0) {
+            if (simple(positions)) {
+                long run = Math.min(remaining, simpleRun(positions));
+                simpleSteps(positions, run);
+                remaining -= run;
+                continue;
+            }
+            if (seen != null) {
+                Long before = seen.put(encode(positions), remaining);
+                if (before != null) {
+                    remaining %= before - remaining;
+                    seen = null;
+                    continue;
+                }
+            }
+            step(positions);
+            remaining -= 1;
+        }
+    }
+
+    /** Return true iff the next step from POSITIONS is simple. */
+    private boolean simple(int[] positions) {
+        for (int i = 0; i < positions.length - 2; i += 1) {
+            if (_rotates[i] && _notches[i + 1][positions[i + 1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of simple steps that may be taken from
+     *  POSITIONS before the next step that is not simple, or
+     *  Long.MAX_VALUE if every later step is simple.  The next step from
+     *  POSITIONS must be simple. */
+    private long simpleRun(int[] positions) {
+        int m = positions.length - 1;
+        if (m < 2 || !_rotates[m - 2] || !_rotates[m - 1]) {
+            return Long.MAX_VALUE;
+        }
+        int b = positions[m - 1];
+        int kicks = 1;
+        while (kicks <= _size && !_notches[m - 1][(b + kicks) % _size]) {
+            kicks += 1;
+        }
+        if (kicks > _size) {
+            return Long.MAX_VALUE;
+        }
+        long when = kickStep(positions[m], kicks);
+        return when == Long.MAX_VALUE ? when : when + 1;
+    }
+
+    /** Return the index (from 0) of the step on which slot m-1 is moved
+     *  for the KTH time by slot m, starting with slot m at setting A, or
+     *  Long.MAX_VALUE if that never happens. */
+    private long kickStep(int a, int kth) {
+        int m = _rotates.length - 1;
+        if (!_rotates[m]) {
+            return _notches[m][a] ? kth - 1 : Long.MAX_VALUE;
+        }
+        if (_lastNotches == 0) {
+            return Long.MAX_VALUE;
+        }
+        long cycles = (kth - 1) / _lastNotches;
+        int rank = (kth - 1) % _lastNotches;
+        for (int d = 0; d < _size; d += 1) {
+            if (_notches[m][(a + d) % _size]) {
+                if (rank == 0) {
+                    return cycles * _size + d;
+                }
+                rank -= 1;
+            }
+        }
+        throw new AssertionError("notch count mismatch");
+    }
+
+    /** Return the number of times slot m, starting at setting A, moves
+     *  slot m-1 during the first STEPS steps. */
+    private long kicks(int a, long steps) {
+        int m = _rotates.length - 1;
+        if (!_rotates[m]) {
+            return _notches[m][a] ? steps : 0;
+        }
+        long result = (steps / _size) * _lastNotches;
+        int partial = (int) (steps % _size);
+        for (int d = 0; d < partial; d += 1) {
+            if (_notches[m][(a + d) % _size]) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Perform STEPS simple steps on POSITIONS. */
+    private void simpleSteps(int[] positions, long steps) {
+        int m = positions.length - 1;
+        int a = positions[m];
+        if (_rotates[m - 1]) {
+            positions[m - 1] =
+                (int) ((positions[m - 1] + kicks(a, steps)) % _size);
+        }
+        if (_rotates[m]) {
+            positions[m] = (int) ((a + steps) % _size);
+        }
+    }
+
+    /** Perform one step on POSITIONS exactly as Machine.convert does. */
+    private void step(int[] positions) {
+        int m = positions.length - 1;
+        boolean[] moves = new boolean[m + 1];
+        moves[m] = true;
+        for (int i = 0; i < m; i += 1) {
+            if (_rotates[i] && _notches[i + 1][positions[i + 1]]) {
+                moves[i] = moves[i + 1] = true;
+            }
+        }
+        for (int i = 0; i <= m; i += 1) {
+            if (moves[i] && _rotates[i]) {
+                positions[i] = (positions[i] + 1) % _size;
+            }
+        }
+    }
+
+    /** Return POSITIONS as a single number. */
+    private long encode(int[] positions) {
+        long result = 0;
+        for (int p : positions) {
+            result = result * _size + p;
+        }
+        return result;
+    }
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Indexed by slot and then setting, true where the rotor in that
+     *  slot is at a notch. */
+    private final boolean[][] _notches;
+
+    /** Indexed by slot, true where the rotor in that slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Number of notches of the rotor in the last slot. */
+    private final int _lastNotches;
+
+    /** True iff every combination of settings fits in a long. */
+    private final boolean _encodable;
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -14,21 +16,64 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        String read = cycles;
-        read = read.replace("(", "");
-        read = read.replace(")", "");
-        _cycles = read.split(" ");
+        _forward = new int[alphabet.size()];
+        _backward = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = _backward[i] = -1;
+        }
+        String read = cycles.replace("(", " ").replace(")", " ").trim();
+        if (!read.isEmpty()) {
+            for (String cycle : read.split("\\s+")) {
+                addCycle(cycle);
+            }
+        }
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] < 0) {
+                _forward[i] = i;
+            }
+            if (_backward[i] < 0) {
+                _backward[i] = i;
+            }
+        }
+    }
+
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to TABLE[I].  TABLE becomes part of this Permutation and must not
+     *  be modified afterwards. */
+    Permutation(int[] table, Alphabet alphabet) {
+        if (table.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        _alphabet = alphabet;
+        _forward = table;
+        _backward = new int[table.length];
+        for (int i = 0; i < table.length; i += 1) {
+            _backward[i] = -1;
+        }
+        for (int i = 0; i < table.length; i += 1) {
+            if (table[i] < 0 || table[i] >= table.length
+                || _backward[table[i]] >= 0) {
+                throw error("table is not a permutation");
+            }
+            _backward[table[i]] = i;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm.  A character that already appears in an earlier cycle
+     *  keeps its earlier mapping. */
     private void addCycle(String cycle) {
-        String[] permuteCycle = new String[_cycles.length + 1];
-        for (int i = 0; i < _cycles.length; i++) {
-            permuteCycle[i] = _cycles[i];
+        int n = cycle.length();
+        for (int i = 0; i < n; i += 1) {
+            int from = _alphabet.toInt(cycle.charAt(i));
+            if (_forward[from] < 0) {
+                _forward[from] = _alphabet.toInt(cycle.charAt((i + 1) % n));
+            }
+            if (_backward[from] < 0) {
+                _backward[from] =
+                    _alphabet.toInt(cycle.charAt((i + n - 1) % n));
+            }
         }
-        permuteCycle[_cycles.length + 1] = cycle;
-        _cycles = permuteCycle;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -48,43 +93,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char temp = '0';
-        char letter = _alphabet.toChar(wrap(p));
-        for (int j = 0; j < _cycles.length; j++) {
-            for (int i = 0; i < _cycles[j].length(); i++) {
-                if (_cycles[j].charAt(i) == letter) {
-                    if ((i + 1) == _cycles[j].length()) {
-                        temp = _cycles[j].charAt(0);
-                    } else {
-                        temp = _cycles[j].charAt((i + 1));
-                    }
-                    return _alphabet.toInt(temp);
-                }
-
-            }
-        }
-        return p;
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char temp = '0';
-        char letter = _alphabet.toChar(wrap(c));
-        for (int j = 0; j < _cycles.length; j++) {
-            for (int i = 0; i < _cycles[j].length(); i++) {
-                if (_cycles[j].charAt(i) == letter) {
-                    if ((i - 1) < 0) {
-                        temp = _cycles[j].charAt(_cycles[j].length() - 1);
-                    } else {
-                        temp = _cycles[j].charAt((i - 1));
-                    }
-                    return _alphabet.toInt(temp);
-                }
-
-            }
-        }
-        return c;
+        return _backward[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -100,6 +115,18 @@ class Permutation {
         return _alphabet.toChar(invert(index));
     }
 
+    /** Return the table mapping each index to its image.  The result
+     *  must not be modified. */
+    int[] table() {
+        return _forward;
+    }
+
+    /** Return the table mapping each index to its preimage.  The result
+     *  must not be modified. */
+    int[] inverseTable() {
+        return _backward;
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -108,19 +135,61 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int i = 0;
-        while (i < _cycles.length) {
-            if (_cycles[i].length() <= 1) {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
                 return false;
             }
-            i += 1;
         }
         return true;
     }
 
+    /** Return the permutation that applies this permutation and then
+     *  OTHER, which must have the same alphabet. */
+    Permutation then(Permutation other) {
+        if (other.size() != size()) {
+            throw error("permutations have different sizes");
+        }
+        int[] table = new int[_forward.length];
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = other._forward[_forward[i]];
+        }
+        return new Permutation(table, _alphabet);
+    }
+
+    /** Return the lengths of my cycles, counting each fixed point as a
+     *  cycle of length 1, longest first.  Two permutations have the same
+     *  cycle lengths iff each is a conjugate of the other. */
+    int[] cycleLengths() {
+        boolean[] seen = new boolean[_forward.length];
+        int[] lengths = new int[_forward.length];
+        int count = 0;
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (!seen[i]) {
+                int length = 0;
+                for (int j = i; !seen[j]; j = _forward[j]) {
+                    seen[j] = true;
+                    length += 1;
+                }
+                lengths[count] = length;
+                count += 1;
+            }
+        }
+        int[] result = Arrays.copyOf(lengths, count);
+        Arrays.sort(result);
+        for (int i = 0, j = count - 1; i < j; i += 1, j -= 1) {
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** A string list that allows the letter to permute. */
-    private String [] _cycles;
+    /** Compiled table mapping each index to its image. */
+    private int[] _forward;
+
+    /** Compiled table mapping each index to its preimage. */
+    private int[] _backward;
 }
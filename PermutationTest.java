@@ -106,4 +106,16 @@ public class PermutationTest {
         Permutation p = new Permutation("(ZACH) (B)", b);
         assertEquals(b, p.alphabet());
     }
+
+    @Test
+    public void testCycleLengths() {
+        Alphabet b = new Alphabet("ABCHZ");
+        Permutation p = new Permutation("(ZA) (CH)", b);
+        assertArrayEquals(new int[] { 2, 2, 1 }, p.cycleLengths());
+        Permutation q = new Permutation("(AB)", b);
+        Permutation pq = p.then(q);
+        assertEquals('B', pq.permute('Z'));
+        assertEquals('A', pq.permute('B'));
+        assertArrayEquals(new int[] { 3, 2 }, pq.cycleLengths());
+    }
 }
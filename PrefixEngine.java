@@ -0,0 +1,312 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A table-driven engine for searches that try many rotor orders in
+ *  turn.  For the reflector and the slots next to it (the "core"), which
+ *  move least often, it precomputes the composed substitution through
+ *  the core, forwards and back, for every combination of their
+ *  settings, building the table for the first K + 1 slots from that for
+ *  the first K.  Converting a character then costs one lookup for the
+ *  whole core plus two for each slot outside it.  When the rotors are
+ *  changed, the tables for the leading slots whose rotors are unchanged
+ *  are kept, so that walking rotor orders in the order numbered by
+ *  KeySpace (in which the slots nearest the reflector change least
+ *  often) rebuilds only the tables for the slots that differ.
+ *  @author Zachary Zhang
+ */
+class PrefixEngine extends Engine {
+
+    /** An engine with the rotors, plugboard, and current rotor settings
+     *  of M, which must have had its rotors and plugboard set.  M itself
+     *  is not changed by my conversions. */
+    PrefixEngine(Machine M) {
+        _alphabet = M.alphabet();
+        _size = _alphabet.size();
+        int n = M.numRotors();
+        _wirings = new int[n][];
+        _forward = new int[n][];
+        _backward = new int[n][];
+        _notches = new boolean[n][];
+        _rotates = new boolean[n];
+        _positions = new int[n];
+        _moves = new boolean[n];
+        int depth = 0;
+        long entries = _size;
+        while (depth < n - 2 && entries * _size <= MAX_CORE_ENTRIES) {
+            depth += 1;
+            entries *= _size;
+        }
+        _depth = depth;
+        _core = new int[depth + 1][];
+        setRotors(M);
+    }
+
+    /** Take the rotors, plugboard, and current rotor settings of M, which
+     *  must have the same alphabet and number of slots as the machine I
+     *  was created from, reusing the core tables for the leading slots
+     *  whose wirings (ring settings included) are unchanged.  Rotors may
+     *  share wirings while differing in notches or in whether they
+     *  rotate, so those are always taken afresh. */
+    void setRotors(Machine M) {
+        if (M.numRotors() != _wirings.length || M.alphabet() != _alphabet) {
+            throw error("machine does not match engine");
+        }
+        int first = _wirings.length;
+        for (int k = _wirings.length - 1; k >= 0; k -= 1) {
+            Rotor rotor = M.rotor(k);
+            if (rotor.wiring() != _wirings[k]) {
+                first = k;
+                _wirings[k] = rotor.wiring();
+                _forward[k] = TableEngine.shiftedTable(rotor.wiring(), _size);
+                _backward[k] =
+                    TableEngine.shiftedTable(rotor.inverseWiring(), _size);
+                _notches[k] = new boolean[_size];
+            }
+            for (int p = 0; p < _size; p += 1) {
+                _notches[k][p] = rotor.atNotch(p);
+            }
+            _rotates[k] = rotor.rotates();
+        }
+        if (_rotates[0]) {
+            throw error("the rotor in slot 0 must not rotate");
+        }
+        Permutation plugboard = M.plugboard();
+        if (plugboard == null) {
+            throw error("plugboard not set");
+        }
+        _plugboard = plugboard.table().clone();
+        _plugboardInverse = plugboard.inverseTable().clone();
+        int[] positions = new int[_wirings.length];
+        for (int k = 0; k < positions.length; k += 1) {
+            positions[k] = M.rotor(k).setting();
+        }
+        if (first == 0 || positions[0] != _positions[0]) {
+            first = 0;
+        }
+        _positions[0] = positions[0];
+        for (int k = first; k <= _depth; k += 1) {
+            buildCore(k);
+        }
+        setPositions(positions);
+    }
+
+    /** Compute _core[K] from _core[K - 1] (or, for K = 0, from the
+     *  reflector at its current setting). */
+    private void buildCore(int k) {
+        int size = _size;
+        if (k == 0) {
+            int[] core = new int[size];
+            System.arraycopy(_forward[0], _positions[0] * size, core, 0,
+                             size);
+            _core[0] = core;
+            _coreBuilds += 1;
+            return;
+        }
+        int[] inner = _core[k - 1];
+        int[] forward = _forward[k], backward = _backward[k];
+        int[] core = new int[inner.length * size];
+        int tables = inner.length / size;
+        for (int t = 0; t < tables; t += 1) {
+            int in = t * size;
+            for (int p = 0; p < size; p += 1) {
+                int out = (t * size + p) * size, shift = p * size;
+                for (int x = 0; x < size; x += 1) {
+                    core[out + x] =
+                        backward[shift + inner[in + forward[shift + x]]];
+                }
+            }
+        }
+        _core[k] = core;
+        _coreBuilds += 1;
+    }
+
+    /** Return the number of slots, counting the reflector, whose
+     *  substitutions are precomputed together. */
+    int coreSlots() {
+        return _depth + 1;
+    }
+
+    /** Return the number of core tables built so far. */
+    long coreBuilds() {
+        return _coreBuilds;
+    }
+
+    @Override
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return a copy of the current settings of my rotors, indexed by
+     *  slot. */
+    int[] positions() {
+        return _positions.clone();
+    }
+
+    /** Set the settings of my rotors to POSITIONS, indexed by slot.  The
+     *  reflector's setting may not be changed this way. */
+    void setPositions(int[] positions) {
+        if (positions.length != _positions.length) {
+            throw error("wrong number of rotor positions");
+        }
+        for (int k = 0; k < positions.length; k += 1) {
+            if (positions[k] < 0 || positions[k] >= _size) {
+                throw error("rotor position out of range");
+            }
+        }
+        if (positions[0] != _positions[0]) {
+            throw error("reflector setting differs from the machine's");
+        }
+        System.arraycopy(positions, 0, _positions, 0, positions.length);
+        locateCore();
+        _simple = simple();
+    }
+
+    /** Set _coreBase to the start of the core table for the current
+     *  settings of slots 1 .. _depth. */
+    private void locateCore() {
+        int index = 0;
+        for (int k = 1; k <= _depth; k += 1) {
+            index = index * _size + _positions[k];
+        }
+        _coreBase = index * _size;
+    }
+
+    /** Advance my rotors as Machine.convert does before converting a
+     *  character. */
+    void advance() {
+        int last = _positions.length - 1;
+        if (!_simple || last == 0) {
+            advanceExactly();
+            return;
+        }
+        int p = _positions[last];
+        boolean kick = _notches[last][p] && _rotates[last - 1];
+        if (_rotates[last]) {
+            _positions[last] = p + 1 == _size ? 0 : p + 1;
+        }
+        if (kick) {
+            int q = _positions[last - 1] + 1;
+            _positions[last - 1] = q == _size ? 0 : q;
+            if (last - 1 <= _depth) {
+                locateCore();
+            }
+            _simple = simple();
+        }
+    }
+
+    /** Advance my rotors by the general rule, for steps on which rotors
+     *  other than the last two may move. */
+    private void advanceExactly() {
+        int last = _positions.length - 1;
+        boolean[] moves = _moves;
+        moves[last] = true;
+        for (int i = 0; i < last; i += 1) {
+            if (_rotates[i] && _notches[i + 1][_positions[i + 1]]) {
+                moves[i] = moves[i + 1] = true;
+            }
+        }
+        for (int i = 0; i <= last; i += 1) {
+            if (moves[i]) {
+                moves[i] = false;
+                if (_rotates[i]) {
+                    int p = _positions[i] + 1;
+                    _positions[i] = p == _size ? 0 : p;
+                }
+            }
+        }
+        locateCore();
+        _simple = simple();
+    }
+
+    /** Return true iff the next step can move only the last two slots,
+     *  as for Odometer. */
+    private boolean simple() {
+        for (int i = 0; i < _positions.length - 2; i += 1) {
+            if (_rotates[i] && _notches[i + 1][_positions[i + 1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the conversion of C by my rotors and plugboard at their
+     *  current settings, without advancing. */
+    int substitute(int c) {
+        int size = _size;
+        int[] positions = _positions;
+        int last = positions.length - 1, depth = _depth;
+        int x = _plugboard[c];
+        for (int k = last; k > depth; k -= 1) {
+            x = _forward[k][positions[k] * size + x];
+        }
+        x = _core[depth][_coreBase + x];
+        for (int k = depth + 1; k <= last; k += 1) {
+            x = _backward[k][positions[k] * size + x];
+        }
+        return _plugboardInverse[x];
+    }
+
+    @Override
+    int convert(int c) {
+        advance();
+        return substitute(c);
+    }
+
+    /** Maximum number of entries in the largest core table. */
+    static final long MAX_CORE_ENTRIES = 1 << 22;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Indexed by slot, the wirings (as by Rotor.wiring) of my rotors,
+     *  which identify them and their ring settings. */
+    private final int[][] _wirings;
+
+    /** Indexed by slot, forward substitution tables as by
+     *  TableEngine.shiftedTable. */
+    private final int[][] _forward;
+
+    /** Indexed by slot, inverse substitution tables as by
+     *  TableEngine.shiftedTable. */
+    private final int[][] _backward;
+
+    /** Indexed by slot and then setting, true where the rotor in that
+     *  slot is at a notch. */
+    private final boolean[][] _notches;
+
+    /** Indexed by slot, true where the rotor in that slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Current settings of my rotors, indexed by slot. */
+    private final int[] _positions;
+
+    /** Scratch array of the rotors that move on the current step. */
+    private final boolean[] _moves;
+
+    /** The last slot of the core. */
+    private final int _depth;
+
+    /** _core[K] maps the settings of slots 1 .. K and an input character
+     *  X, at _core[K][(((P1 * size + P2) * size + ...) + PK) * size + X],
+     *  to X's image through slots K .. 0 and back through slots 1 .. K. */
+    private final int[][] _core;
+
+    /** Start of the current core table in _core[_depth]. */
+    private int _coreBase;
+
+    /** True iff the next step can move only the last two slots. */
+    private boolean _simple;
+
+    /** Number of core tables built. */
+    private long _coreBuilds;
+
+    /** Plugboard table. */
+    private int[] _plugboard;
+
+    /** Inverse plugboard table. */
+    private int[] _plugboardInverse;
+}
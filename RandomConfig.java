@@ -0,0 +1,304 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** A randomly generated machine configuration: an alphabet, a set of
+ *  reflectors, fixed rotors, and moving rotors with random wirings and
+ *  notches, and the numbers of rotor slots and pawls.  Used to exercise
+ *  engines on machines other than the historical ones.
+ *  @author Zachary Zhang
+ */
+class RandomConfig {
+
+    /** Characters from which random alphabets are drawn. */
+    static final String SYMBOLS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    /** A configuration drawn using RAND with an alphabet of
+     *  2 <= SIZE <= SYMBOLS.length() characters, 1 < NUMROTORS slots and
+     *  0 <= PAWLS < NUMROTORS pawls, and with EXTRA rotors of each kind
+     *  beyond the minimum needed to fill the slots.  When SHUFFLE, the
+     *  alphabet is a random selection from SYMBOLS, and otherwise its
+     *  first SIZE characters. */
+    RandomConfig(Random rand, int size, int numRotors, int pawls,
+                 int extra, boolean shuffle) {
+        if (size < 2 || size > SYMBOLS.length()) {
+            throw error("alphabet size must be in 2..%d", SYMBOLS.length());
+        }
+        if (numRotors < 2 || pawls < 0 || pawls >= numRotors) {
+            throw error("bad rotor or pawl count");
+        }
+        _random = rand;
+        char[] symbols = SYMBOLS.toCharArray();
+        if (shuffle) {
+            shuffle(symbols);
+        }
+        _alphabet = new Alphabet(new String(symbols, 0, size));
+        _numRotors = numRotors;
+        _pawls = pawls;
+        for (int i = 0; i < 1 + extra; i += 1) {
+            _reflectors.add("R" + i);
+            _wirings.add(reflectorWiring());
+            _types.add("R");
+        }
+        for (int i = 0; i < numRotors - 1 - pawls + extra; i += 1) {
+            _fixed.add("F" + i);
+            _wirings.add(rotorWiring());
+            _types.add("N");
+        }
+        for (int i = 0; i < pawls + extra; i += 1) {
+            _moving.add("M" + i);
+            _wirings.add(rotorWiring());
+            _types.add("M" + notches());
+        }
+    }
+
+    /** A configuration drawn using RAND whose sizes are also random. */
+    static RandomConfig random(Random rand) {
+        int size = 2 + rand.nextInt(SYMBOLS.length() - 1);
+        int numRotors = 2 + rand.nextInt(6);
+        int pawls = rand.nextInt(numRotors);
+        return new RandomConfig(rand, size, numRotors, pawls,
+                                rand.nextInt(3), true);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return a new machine with my configuration and its own set of
+     *  rotors. */
+    Machine machine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int i = 0; i < _types.size(); i += 1) {
+            String name = name(i), type = _types.get(i);
+            Permutation perm = new Permutation(_wirings.get(i), _alphabet);
+            if (type.charAt(0) == 'M') {
+                rotors.add(new MovingRotor(name, perm, type.substring(1)));
+            } else if (type.charAt(0) == 'N') {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new Reflector(name, perm));
+            }
+        }
+        return new Machine(_alphabet, _numRotors, _pawls, rotors);
+    }
+
+    /** Return my configuration in the format read by Main. */
+    String configText() {
+        StringBuilder out = new StringBuilder();
+        out.append(_alphabet.toString()).append('\n');
+        out.append(' ').append(_numRotors).append(' ').append(_pawls)
+            .append('\n');
+        for (int i = 0; i < _types.size(); i += 1) {
+            out.append(' ').append(name(i)).append(' ').append(_types.get(i))
+                .append(' ').append(_wirings.get(i)).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Return a random settings line for my machines, in the format
+     *  accepted by Machine.setUp, with up to PLUGS plugboard pairs and
+     *  no ring settings.  When MIXED, moving rotors may also occupy the
+     *  non-moving slots. */
+    String settingsLine(int plugs, boolean mixed) {
+        return settingsLine(plugs, mixed, false);
+    }
+
+    /** Return a random settings line as for settingsLine(PLUGS, MIXED),
+     *  which also has random ring settings if RINGS. */
+    String settingsLine(int plugs, boolean mixed, boolean rings) {
+        String[] names = new String[_numRotors];
+        ArrayList<String> used = new ArrayList<>();
+        names[0] = pick(_reflectors, used);
+        for (int i = _numRotors - _pawls; i < _numRotors; i += 1) {
+            names[i] = pick(_moving, used);
+        }
+        ArrayList<String> middle = new ArrayList<>(_fixed);
+        if (mixed) {
+            middle.addAll(_moving);
+        }
+        for (int i = 1; i < _numRotors - _pawls; i += 1) {
+            names[i] = pick(middle, used);
+        }
+        StringBuilder line = new StringBuilder("*");
+        for (String name : names) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int i = 1; i < _numRotors; i += 1) {
+            line.append(_alphabet.toChar(_random.nextInt(_alphabet.size())));
+        }
+        if (rings) {
+            line.append(' ');
+            for (int i = 1; i < _numRotors; i += 1) {
+                line.append(_alphabet.toChar(
+                    _random.nextInt(_alphabet.size())));
+            }
+        }
+        int[] letters = permutation();
+        for (int i = 0; i + 1 < letters.length && i / 2 < plugs; i += 2) {
+            line.append(" (").append(_alphabet.toChar(letters[i]))
+                .append(_alphabet.toChar(letters[i + 1])).append(')');
+        }
+        return line.toString();
+    }
+
+    /** Return a random index into my alphabet. */
+    int randomIndex() {
+        return _random.nextInt(_alphabet.size());
+    }
+
+    /** Return the name of my I-th rotor, in order of definition. */
+    private String name(int i) {
+        int r = _reflectors.size(), f = _fixed.size();
+        if (i < r) {
+            return _reflectors.get(i);
+        } else if (i < r + f) {
+            return _fixed.get(i - r);
+        } else {
+            return _moving.get(i - r - f);
+        }
+    }
+
+    /** Return a random member of NAMES not in USED, adding it to USED. */
+    private String pick(ArrayList<String> names, ArrayList<String> used) {
+        ArrayList<String> free = new ArrayList<>(names);
+        free.removeAll(used);
+        String result = free.get(_random.nextInt(free.size()));
+        used.add(result);
+        return result;
+    }
+
+    /** Return 0 to 3 random notch characters, occasionally more. */
+    private String notches() {
+        int n = _random.nextInt(10) == 0
+            ? _random.nextInt(_alphabet.size() + 1) : _random.nextInt(4);
+        int[] letters = permutation();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n && i < letters.length; i += 1) {
+            result.append(_alphabet.toChar(letters[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return the cycles of a random permutation of my alphabet that is
+     *  not the identity. */
+    private String rotorWiring() {
+        int[] perm = permutation();
+        boolean identity = true;
+        for (int i = 0; i < perm.length; i += 1) {
+            identity &= perm[i] == i;
+        }
+        if (identity) {
+            perm[0] = 1;
+            perm[1] = 0;
+        }
+        return cycles(perm);
+    }
+
+    /** Return the cycles of a random involution of my alphabet with at
+     *  most one fixed point. */
+    private String reflectorWiring() {
+        int[] letters = permutation();
+        int[] perm = new int[letters.length];
+        for (int i = 0; i < letters.length; i += 1) {
+            perm[i] = i;
+        }
+        for (int i = 0; i + 1 < letters.length; i += 2) {
+            perm[letters[i]] = letters[i + 1];
+            perm[letters[i + 1]] = letters[i];
+        }
+        return cycles(perm);
+    }
+
+    /** Return a random permutation of 0 .. size - 1 of my alphabet. */
+    private int[] permutation() {
+        int[] result = new int[_alphabet.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = i;
+        }
+        for (int i = result.length - 1; i > 0; i -= 1) {
+            int j = _random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Randomly rearrange SYMBOLS. */
+    private void shuffle(char[] symbols) {
+        for (int i = symbols.length - 1; i > 0; i -= 1) {
+            int j = _random.nextInt(i + 1);
+            char t = symbols[i];
+            symbols[i] = symbols[j];
+            symbols[j] = t;
+        }
+    }
+
+    /** Return PERM, a permutation of my alphabet's indices, in cycle
+     *  notation, omitting fixed points. */
+    private String cycles(int[] perm) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i += 1) {
+            if (seen[i] || perm[i] == i) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int j = i; !seen[j]; j = perm[j]) {
+                seen[j] = true;
+                result.append(_alphabet.toChar(j));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Source of random choices. */
+    private final Random _random;
+
+    /** Alphabet of my machines. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Names of my reflectors. */
+    private final ArrayList<String> _reflectors = new ArrayList<>();
+
+    /** Names of my fixed rotors. */
+    private final ArrayList<String> _fixed = new ArrayList<>();
+
+    /** Names of my moving rotors. */
+    private final ArrayList<String> _moving = new ArrayList<>();
+
+    /** Wirings of all my rotors in cycle notation, in order of
+     *  definition: reflectors, fixed rotors, then moving rotors. */
+    private final ArrayList<String> _wirings = new ArrayList<>();
+
+    /** Types of all my rotors in the format read by Main, in order of
+     *  definition. */
+    private final ArrayList<String> _types = new ArrayList<>();
+}
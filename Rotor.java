@@ -12,6 +12,8 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        _wiring = perm.table();
+        _inverseWiring = perm.inverseTable();
     }
 
     /** Return my name. */
@@ -59,30 +61,89 @@ class Rotor {
         _setting = alphabet().toInt(cposn);
     }
 
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING: the offset of my wiring from the ring that
+     *  carries my setting and notches.  The wiring tables are recomputed
+     *  here, so that conversions cost the same at every ring setting. */
+    void setRing(int ring) {
+        ring = _permutation.wrap(ring);
+        if (ring == _ring) {
+            return;
+        }
+        _ring = ring;
+        if (ring == 0) {
+            _wiring = _permutation.table();
+            _inverseWiring = _permutation.inverseTable();
+            return;
+        }
+        int[] table = _permutation.table();
+        int[] wiring = new int[table.length];
+        int[] inverse = new int[table.length];
+        for (int p = 0; p < table.length; p += 1) {
+            int c = _permutation.wrap(table[_permutation.wrap(p - ring)]
+                                      + ring);
+            wiring[p] = c;
+            inverse[c] = p;
+        }
+        _wiring = wiring;
+        _inverseWiring = inverse;
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int conversion = _permutation.permute(_permutation.wrap(p + _setting));
+        int conversion = _wiring[_permutation.wrap(p + _setting)];
         return _permutation.wrap(conversion - _setting);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int conversion = _permutation.invert(_permutation.wrap(e + _setting));
+        int conversion = _inverseWiring[_permutation.wrap(e + _setting)];
         return _permutation.wrap(conversion - _setting);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff I would be positioned to allow the rotor to my
+     *  left to advance were I at setting POSN. */
+    boolean atNotch(int posn) {
         return false;
     }
 
+    /** Return the table mapping each index to its image under my
+     *  permutation at the 0 setting and my current ring setting.  The
+     *  result must not be modified, and is a different array for each
+     *  ring setting. */
+    int[] wiring() {
+        return _wiring;
+    }
+
+    /** Return the table mapping each index to its image under the inverse
+     *  of my permutation at the 0 setting and my current ring setting.
+     *  The result must not be modified. */
+    int[] inverseWiring() {
+        return _inverseWiring;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor with my name and permutation, in its 0
+     *  setting and 0 ring setting. */
+    Rotor copy() {
+        return new Rotor(_name, _permutation);
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -97,4 +158,13 @@ class Rotor {
     /** Setting of the rotor. */
     private int _setting;
 
+    /** Ring setting of the rotor. */
+    private int _ring;
+
+    /** My permutation at the 0 setting and my ring setting. */
+    private int[] _wiring;
+
+    /** The inverse of _wiring. */
+    private int[] _inverseWiring;
+
 }
@@ -0,0 +1,469 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A compact, memory-mapped store of rotor descriptions.  A library file
+ *  holds an alphabet, the numbers of rotor slots and pawls, a pool of
+ *  distinct wirings stored as byte (or, for alphabets of more than 256
+ *  characters, short) tables, a notch bitset for each moving rotor, and
+ *  an index of rotor names sorted for binary search.  Opening a library
+ *  maps the file and reads only its header; a rotor is materialized only
+ *  when asked for by name, and rotors that share a wiring share a single
+ *  Permutation.
+ *
+ *  The file layout is a header of int fields (see the HDR_ constants),
+ *  followed by the alphabet as chars, the wiring pool, the notch
+ *  bitsets, the index records (each INDEX_RECORD bytes: name offset,
+ *  name length, wiring number, kind, notch offset), and the names in
+ *  UTF-8, all in big-endian order.
+ *  @author Zachary Zhang
+ */
+class RotorLibrary {
+
+    /** Build or inspect rotor libraries, as specified by ARGS:
+     *      build CONFIG LIBRARY    convert a Main configuration file
+     *      synth LIBRARY SIZE COUNT [DISTINCT [SEED]]
+     *                              write COUNT random rotors over an
+     *                              alphabet of SIZE characters, using
+     *                              DISTINCT different wirings
+     *      info LIBRARY            describe LIBRARY
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 3 && args[0].equals("build")) {
+                Machine M;
+                try (Scanner config = new Scanner(new File(args[1]))) {
+                    M = new Main(config, null, null).readConfig();
+                } catch (IOException excp) {
+                    throw error("could not open %s", args[1]);
+                }
+                write(new File(args[2]), M.alphabet(), M.numRotors(),
+                      M.numPawls(), M.allRotors());
+            } else if (args.length >= 4 && args[0].equals("synth")) {
+                int size = Integer.parseInt(args[2]);
+                int count = Integer.parseInt(args[3]);
+                int distinct = args.length > 4 ? Integer.parseInt(args[4])
+                    : count;
+                long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+                synthesize(new File(args[1]), size, count, distinct,
+                           new Random(seed));
+            } else if (args.length == 2 && args[0].equals("info")) {
+                long start = System.nanoTime();
+                RotorLibrary lib = open(new File(args[1]));
+                double millis = (System.nanoTime() - start) / 1e6;
+                System.out.printf("%d rotors, %d distinct wirings, "
+                                  + "alphabet of %d, %d slots, %d pawls, "
+                                  + "opened in %.3f ms%n",
+                                  lib.size(), lib.wiringCount(),
+                                  lib.alphabet().size(), lib.numRotors(),
+                                  lib.numPawls(), millis);
+            } else {
+                throw error("usage: RotorLibrary build CONFIG LIBRARY | "
+                            + "synth LIBRARY SIZE COUNT [DISTINCT [SEED]] | "
+                            + "info LIBRARY");
+            }
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number%n");
+            System.exit(1);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Write the library file OUT holding ROTORS, which all have alphabet
+     *  ALPHA, for machines with NUMROTORS slots and PAWLS pawls. */
+    static void write(File out, Alphabet alpha, int numRotors, int pawls,
+                      Collection<Rotor> rotors) {
+        int n = alpha.size();
+        ArrayList<Rotor> sorted = new ArrayList<>(rotors);
+        sorted.sort((a, b) -> compareNames(utf8(a.name()), utf8(b.name())));
+        for (int i = 1; i < sorted.size(); i += 1) {
+            if (sorted.get(i).name().equals(sorted.get(i - 1).name())) {
+                throw error("duplicate rotor name: %s",
+                            sorted.get(i).name());
+            }
+        }
+
+        HashMap<IntBuffer, Integer> wiringIds = new HashMap<>();
+        ArrayList<int[]> wirings = new ArrayList<>();
+        int[] wiringOf = new int[sorted.size()];
+        int moving = 0;
+        for (int i = 0; i < sorted.size(); i += 1) {
+            Rotor rotor = sorted.get(i);
+            if (rotor.size() != n) {
+                throw error("rotor %s has the wrong alphabet", rotor.name());
+            }
+            int[] wiring = rotor.permutation().table();
+            Integer id = wiringIds.get(IntBuffer.wrap(wiring));
+            if (id == null) {
+                id = wirings.size();
+                wirings.add(wiring);
+                wiringIds.put(IntBuffer.wrap(wiring), id);
+            }
+            wiringOf[i] = id;
+            if (kind(rotor) == MOVING) {
+                moving += 1;
+            }
+        }
+
+        int width = n <= 256 ? 1 : 2;
+        int notchBytes = (n + 7) / 8;
+        byte[][] names = new byte[sorted.size()][];
+        int namesLength = 0;
+        for (int i = 0; i < names.length; i += 1) {
+            names[i] = utf8(sorted.get(i).name());
+            namesLength += names[i].length;
+        }
+        int alphabetOff = HEADER_LENGTH;
+        int wiringsOff = alphabetOff + 2 * n;
+        int notchesOff = wiringsOff + wirings.size() * n * width;
+        int indexOff = notchesOff + moving * notchBytes;
+        int namesOff = indexOff + sorted.size() * INDEX_RECORD;
+        ByteBuffer buf = ByteBuffer.allocate(namesOff + namesLength);
+
+        buf.putInt(HDR_MAGIC, MAGIC).putInt(HDR_VERSION, VERSION)
+            .putInt(HDR_SIZE, n).putInt(HDR_WIDTH, width)
+            .putInt(HDR_SLOTS, numRotors).putInt(HDR_PAWLS, pawls)
+            .putInt(HDR_WIRINGS, wirings.size())
+            .putInt(HDR_ROTORS, sorted.size())
+            .putInt(HDR_WIRINGS_OFF, wiringsOff)
+            .putInt(HDR_INDEX_OFF, indexOff)
+            .putInt(HDR_NAMES_OFF, namesOff);
+        for (int i = 0; i < n; i += 1) {
+            buf.putChar(alphabetOff + 2 * i, alpha.toChar(i));
+        }
+        buf.position(wiringsOff);
+        for (int[] wiring : wirings) {
+            for (int p : wiring) {
+                if (width == 1) {
+                    buf.put((byte) p);
+                } else {
+                    buf.putShort((short) p);
+                }
+            }
+        }
+        int notchPos = notchesOff, namePos = namesOff;
+        for (int i = 0; i < sorted.size(); i += 1) {
+            Rotor rotor = sorted.get(i);
+            int kind = kind(rotor);
+            int rec = indexOff + i * INDEX_RECORD;
+            buf.putInt(rec, namePos).putInt(rec + 4, names[i].length)
+                .putInt(rec + 8, wiringOf[i]).putInt(rec + 12, kind)
+                .putInt(rec + 16, kind == MOVING ? notchPos : -1);
+            buf.position(namePos);
+            buf.put(names[i]);
+            namePos += names[i].length;
+            if (kind == MOVING) {
+                for (int p = 0; p < n; p += 1) {
+                    if (rotor.atNotch(p)) {
+                        int b = notchPos + p / 8;
+                        buf.put(b, (byte) (buf.get(b) | (1 << (p % 8))));
+                    }
+                }
+                notchPos += notchBytes;
+            }
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(out, "rw")) {
+            file.setLength(0);
+            file.getChannel().write(ByteBuffer.wrap(buf.array()));
+        } catch (IOException excp) {
+            throw error("could not write %s", out);
+        }
+    }
+
+    /** Write the library file OUT with COUNT randomly wired rotors over
+     *  an alphabet of SIZE characters, of which 1 <= DISTINCT <= COUNT
+     *  are distinct, using RAND.  About a tenth of the rotors are
+     *  reflectors and a tenth fixed rotors; the rest move. */
+    static void synthesize(File out, int size, int count, int distinct,
+                           Random rand) {
+        if (size < 2 || size > Character.MAX_VALUE - 'A' || distinct < 1
+            || distinct > count) {
+            throw error("bad synthetic library parameters");
+        }
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append((char) ('A' + i));
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        Permutation[] pool = new Permutation[distinct];
+        for (int i = 0; i < distinct; i += 1) {
+            int[] table = new int[size];
+            for (int j = 0; j < size; j += 1) {
+                table[j] = j;
+            }
+            for (int j = size - 1; j > 0; j -= 1) {
+                int k = rand.nextInt(j + 1);
+                int t = table[j];
+                table[j] = table[k];
+                table[k] = t;
+            }
+            pool[i] = new Permutation(table, alpha);
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int i = 0; i < count; i += 1) {
+            Permutation perm = pool[i % distinct];
+            String name = "R" + i;
+            if (i % 10 == 0) {
+                rotors.add(new Reflector(name, perm));
+            } else if (i % 10 == 1) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm, "" + alpha.toChar(
+                    rand.nextInt(size))));
+            }
+        }
+        write(out, alpha, 5, 3, rotors);
+    }
+
+    /** Return true iff FILE begins with a rotor library header: MAGIC
+     *  and VERSION, followed by a complete header whose alphabet size and
+     *  wiring pool offset agree, so that a configuration file whose
+     *  first line happens to begin with the characters of MAGIC is not
+     *  taken for a library. */
+    static boolean isLibrary(File file) {
+        try (DataInputStream in =
+             new DataInputStream(new FileInputStream(file))) {
+            byte[] bytes = new byte[HEADER_LENGTH];
+            in.readFully(bytes);
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            int size = header.getInt(HDR_SIZE);
+            return header.getInt(HDR_MAGIC) == MAGIC
+                && header.getInt(HDR_VERSION) == VERSION
+                && size > 0 && size <= Character.MAX_VALUE
+                && header.getInt(HDR_WIRINGS_OFF) == HEADER_LENGTH + 2 * size;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the library in FILE, mapped into memory. */
+    static RotorLibrary open(File file) {
+        try (FileChannel channel =
+             new RandomAccessFile(file, "r").getChannel()) {
+            if (channel.size() < HEADER_LENGTH
+                || channel.size() > Integer.MAX_VALUE) {
+                throw error("%s is not a rotor library", file);
+            }
+            return new RotorLibrary(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            channel.size()), file);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** A library whose contents are DATA, read from FILE. */
+    private RotorLibrary(MappedByteBuffer data, File file) {
+        _data = data;
+        if (data.getInt(HDR_MAGIC) != MAGIC
+            || data.getInt(HDR_VERSION) != VERSION) {
+            throw error("%s is not a rotor library", file);
+        }
+        int n = data.getInt(HDR_SIZE);
+        char[] chars = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            chars[i] = data.getChar(HEADER_LENGTH + 2 * i);
+        }
+        _alphabet = new Alphabet(new String(chars));
+        _width = data.getInt(HDR_WIDTH);
+        _numRotors = data.getInt(HDR_SLOTS);
+        _pawls = data.getInt(HDR_PAWLS);
+        _rotorCount = data.getInt(HDR_ROTORS);
+        _wiringsOff = data.getInt(HDR_WIRINGS_OFF);
+        _indexOff = data.getInt(HDR_INDEX_OFF);
+        _permutations = new Permutation[data.getInt(HDR_WIRINGS)];
+    }
+
+    /** Return a new machine whose available rotors are mine. */
+    Machine machine() {
+        return new Machine(_alphabet, _numRotors, _pawls, this);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots of my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls of my machines. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the number of rotors I hold. */
+    int size() {
+        return _rotorCount;
+    }
+
+    /** Return the number of distinct wirings I hold. */
+    int wiringCount() {
+        return _permutations.length;
+    }
+
+    /** Return a new rotor, in its 0 setting, described by my entry for
+     *  NAME, or null if I have none.  Rotors with the same wiring share
+     *  a Permutation. */
+    Rotor newRotor(String name) {
+        int rec = find(utf8(name));
+        if (rec < 0) {
+            return null;
+        }
+        Permutation perm = permutation(_data.getInt(rec + 8));
+        switch (_data.getInt(rec + 12)) {
+        case REFLECTOR:
+            return new Reflector(name, perm);
+        case FIXED:
+            return new FixedRotor(name, perm);
+        default:
+            int notchOff = _data.getInt(rec + 16);
+            StringBuilder notches = new StringBuilder();
+            for (int p = 0; p < _alphabet.size(); p += 1) {
+                if ((_data.get(notchOff + p / 8) & (1 << (p % 8))) != 0) {
+                    notches.append(_alphabet.toChar(p));
+                }
+            }
+            return new MovingRotor(name, perm, notches.toString());
+        }
+    }
+
+    /** Return the offset of the index record for the name whose UTF-8
+     *  encoding is KEY, or -1 if there is none. */
+    private int find(byte[] key) {
+        int lo = 0, hi = _rotorCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int rec = _indexOff + mid * INDEX_RECORD;
+            int cmp = compareName(rec, key);
+            if (cmp == 0) {
+                return rec;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Compare the name in index record REC with KEY, as for
+     *  compareNames. */
+    private int compareName(int rec, byte[] key) {
+        int off = _data.getInt(rec), len = _data.getInt(rec + 4);
+        for (int i = 0; i < len && i < key.length; i += 1) {
+            int c = (_data.get(off + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - key.length;
+    }
+
+    /** Return the permutation for wiring number ID, creating it on first
+     *  use. */
+    private synchronized Permutation permutation(int id) {
+        if (_permutations[id] == null) {
+            int n = _alphabet.size();
+            int[] table = new int[n];
+            int base = _wiringsOff + id * n * _width;
+            for (int p = 0; p < n; p += 1) {
+                table[p] = _width == 1 ? _data.get(base + p) & 0xff
+                    : _data.getShort(base + 2 * p) & 0xffff;
+            }
+            _permutations[id] = new Permutation(table, _alphabet);
+        }
+        return _permutations[id];
+    }
+
+    /** Return the kind of ROTOR stored in an index record. */
+    private static int kind(Rotor rotor) {
+        if (rotor.reflecting()) {
+            return REFLECTOR;
+        } else if (rotor.rotates()) {
+            return MOVING;
+        } else {
+            return FIXED;
+        }
+    }
+
+    /** Return NAME encoded in UTF-8. */
+    private static byte[] utf8(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Compare the UTF-8 encoded names A and B as unsigned bytes. */
+    private static int compareNames(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    /** Identifies a library file ("ENRL"). */
+    static final int MAGIC = 0x454e524c;
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Header field offsets. */
+    static final int HDR_MAGIC = 0, HDR_VERSION = 4, HDR_SIZE = 8,
+        HDR_WIDTH = 12, HDR_SLOTS = 16, HDR_PAWLS = 20, HDR_WIRINGS = 24,
+        HDR_ROTORS = 28, HDR_WIRINGS_OFF = 32, HDR_INDEX_OFF = 36,
+        HDR_NAMES_OFF = 40;
+
+    /** Length of the header. */
+    static final int HEADER_LENGTH = 44;
+
+    /** Length of an index record. */
+    static final int INDEX_RECORD = 20;
+
+    /** Rotor kinds in index records. */
+    static final int REFLECTOR = 0, FIXED = 1, MOVING = 2;
+
+    /** The mapped library file. */
+    private final MappedByteBuffer _data;
+
+    /** Alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Bytes per wiring table entry. */
+    private final int _width;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Number of rotors. */
+    private final int _rotorCount;
+
+    /** Offset of the wiring pool. */
+    private final int _wiringsOff;
+
+    /** Offset of the index records. */
+    private final int _indexOff;
+
+    /** Permutations for each wiring, created on first use. */
+    private final Permutation[] _permutations;
+}
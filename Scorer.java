@@ -0,0 +1,94 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Scores candidate plaintexts by the sum of the log-probabilities of
+ *  their characters under a single-letter language model.  Higher scores
+ *  indicate more plausible plaintexts.
+ *  @author Zachary Zhang
+ */
+class Scorer {
+
+    /** Relative frequencies of the letters A-Z in English text. */
+    static final double[] ENGLISH = {
+        8.17, 1.49, 2.78, 4.25, 12.70, 2.23, 2.02, 6.09, 6.97, 0.15,
+        0.77, 4.03, 2.41, 6.75, 7.51, 1.93, 0.10, 5.99, 6.33, 9.06,
+        2.76, 0.98, 2.36, 0.15, 1.97, 0.07
+    };
+
+    /** Relative frequency assumed for characters that are not letters. */
+    static final double OTHER = 0.01;
+
+    /** A scorer for texts in ALPHA using English letter frequencies, with
+     *  upper- and lower-case letters treated alike. */
+    Scorer(Alphabet alpha) {
+        double[] freq = new double[alpha.size()];
+        for (int i = 0; i < freq.length; i += 1) {
+            char ch = Character.toUpperCase(alpha.toChar(i));
+            freq[i] = ch >= 'A' && ch <= 'Z' ? ENGLISH[ch - 'A'] : OTHER;
+        }
+        _weights = logProbabilities(freq);
+    }
+
+    /** A scorer for texts in ALPHA whose frequencies are those of the
+     *  indices in SAMPLE, with one added to each count. */
+    Scorer(Alphabet alpha, int[] sample) {
+        double[] freq = new double[alpha.size()];
+        for (int i = 0; i < freq.length; i += 1) {
+            freq[i] = 1;
+        }
+        for (int c : sample) {
+            freq[c] += 1;
+        }
+        _weights = logProbabilities(freq);
+    }
+
+    /** Return the natural logarithms of FREQ normalized to sum to 1. */
+    private static double[] logProbabilities(double[] freq) {
+        double total = 0;
+        for (double f : freq) {
+            total += f;
+        }
+        if (total <= 0) {
+            throw error("empty language model");
+        }
+        double[] result = new double[freq.length];
+        for (int i = 0; i < freq.length; i += 1) {
+            result[i] = Math.log(freq[i] / total);
+        }
+        return result;
+    }
+
+    /** Return the score of the single character with index C. */
+    double weight(int c) {
+        return _weights[c];
+    }
+
+    /** Return the scores of every character, indexed by alphabet index.
+     *  The result must not be modified. */
+    double[] weights() {
+        return _weights;
+    }
+
+    /** Return the largest score of any single character, which bounds
+     *  the score that any further character can add. */
+    double maxWeight() {
+        double result = Double.NEGATIVE_INFINITY;
+        for (double w : _weights) {
+            result = Math.max(result, w);
+        }
+        return result;
+    }
+
+    /** Return the score of TEXT[START .. END-1]. */
+    double score(int[] text, int start, int end) {
+        double result = 0;
+        for (int i = start; i < end; i += 1) {
+            result += _weights[text[i]];
+        }
+        return result;
+    }
+
+    /** Log-probabilities, indexed by alphabet index. */
+    private final double[] _weights;
+}
@@ -0,0 +1,230 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for key searches.
+ *  @author Zachary Zhang
+ */
+public class SearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with three moving rotors and one reflector. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 4 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** The settings line of the key used in searches. */
+    static final String KEY = "* B II I III QRX";
+
+    /** A plaintext with WEATHER at offset 3. */
+    static final String PLAIN =
+        "THEWEATHERTODAYISFAIRANDTHESEAISCALMSOTHECONVOYWILLSAIL"
+        + "ATDAWNWITHTHREEESCORTSANDNOAIRCOVERBEYONDTHECAPE";
+
+    /** Return the machine described by the configuration file
+     *  CONFIG. */
+    static Machine machine(File config) throws IOException {
+        try (Scanner in = new Scanner(config)) {
+            return new Main(in, null, null).readConfig();
+        }
+    }
+
+    /** Return true iff SETTINGS is a key under which my machine
+     *  deciphers the ciphertext in DIR to PLAIN. */
+    static boolean deciphers(File dir, String settings) throws IOException {
+        Machine M = machine(new File(dir, KeySearch.CONFIG));
+        M.setUp(settings);
+        String cipher = new String(Files.readAllBytes(
+            new File(dir, KeySearch.CIPHER).toPath()), "UTF-8");
+        return M.convert(cipher).equals(PLAIN);
+    }
+
+    /** Return a new search directory for the configuration CONFIG and
+     *  PLAIN enciphered under KEY, set up by KeySearch.init with the
+     *  options OPTIONS. */
+    static File searchDirectory(String... options) throws IOException {
+        File base = Files.createTempDirectory("search").toFile();
+        base.deleteOnExit();
+        File config = new File(base, "config.txt");
+        File cipher = new File(base, "cipher.txt");
+        Files.write(config.toPath(), CONFIG.getBytes("UTF-8"));
+        Machine M = machine(config);
+        M.setUp(KEY);
+        Files.write(cipher.toPath(), M.convert(PLAIN).getBytes("UTF-8"));
+        File dir = new File(base, "search");
+        String[] args = new String[options.length + 4];
+        System.arraycopy(options, 0, args, 4, options.length);
+        KeySearch.init(dir, config, cipher, args, 4);
+        return dir;
+    }
+
+    /** Return the indices in ALPHA of the characters of S. */
+    static int[] indices(Alphabet alpha, String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i += 1) {
+            result[i] = alpha.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCribAtAnyAdmissibleOffset() throws IOException {
+        File dir = searchDirectory("--crib", "WEATHER", "--top", "3");
+        KeySearch search = new KeySearch(dir);
+        search.work();
+        TopK top = search.merge();
+        assertFalse(top.entries().isEmpty());
+        assertTrue(deciphers(dir, top.entries().get(0).settings));
+    }
+
+    @Test
+    public void testCribScanKeepsOnlyAdmissibleOffsets() throws IOException {
+        File dir = searchDirectory("--crib", "THE", "--top", "40");
+        KeySearch search = new KeySearch(dir);
+        search.work();
+        Machine M = machine(new File(dir, KeySearch.CONFIG));
+        String cipher = new String(Files.readAllBytes(
+            new File(dir, KeySearch.CIPHER).toPath()), "UTF-8");
+        HashSet<Integer> offsets = new HashSet<>();
+        for (CribPlacer.Placement p
+                 : new CribPlacer(M.alphabet(), "THE")
+                 .place(indices(M.alphabet(), cipher), 0)) {
+            offsets.add(p.offset);
+        }
+        assertTrue(offsets.size() > 1);
+        List<TopK.Entry> entries = search.merge().entries();
+        assertEquals(40, entries.size());
+        for (TopK.Entry entry : entries) {
+            M.setUp(entry.settings);
+            String plain = M.convert(cipher);
+            boolean found = false;
+            for (int at = plain.indexOf("THE"); at >= 0 && !found;
+                 at = plain.indexOf("THE", at + 1)) {
+                found = offsets.contains(at);
+            }
+            assertTrue(entry.settings, found);
+        }
+    }
+
+    @Test
+    public void testTopKKeepsBestAndRoundTrips() {
+        TopK top = new TopK(3);
+        assertEquals(Double.NEGATIVE_INFINITY, top.threshold(), 0);
+        double[] scores = { -5, -1, -7, -3, -2, -9 };
+        for (int i = 0; i < scores.length; i += 1) {
+            top.add(scores[i], "line " + i);
+        }
+        assertEquals(-3, top.threshold(), 0);
+        assertFalse(top.wants(-3));
+        assertTrue(top.wants(-2.5));
+        assertEquals("line 1", top.entries().get(0).settings);
+        assertEquals("line 4", top.entries().get(1).settings);
+        assertEquals("line 3", top.entries().get(2).settings);
+        TopK copy = new TopK(3);
+        copy.parse(top.format());
+        assertEquals(top.format(), copy.format());
+    }
+
+    @Test
+    public void testKeySpaceListsEveryOrderOnce() {
+        Machine M = MachineTest.navalMachine();
+        KeySpace space = new KeySpace(M);
+        assertEquals(2 * 2 * 5 * 4 * 3, space.orders());
+        assertEquals(26 * 26 * 26 * 26, space.positions());
+        HashSet<String> seen = new HashSet<>();
+        for (long i = 0; i < space.orders(); i += 1) {
+            String line = "* " + String.join(" ", space.order(i));
+            assertTrue(seen.add(line));
+            M.setUp(line + " AAAA");
+        }
+    }
+
+    @Test
+    public void testWorkTakesOverOnlyAbandonedClaims() throws IOException {
+        File dir = searchDirectory("--top", "3", "--crib", "WEATHER");
+        File claims = new File(dir, "claims");
+        File dead = new File(claims, "0");
+        Files.write(dead.toPath(),
+                    ((1L << 40) + "@" + KeySearch.HOST).getBytes());
+        File live = new File(claims, "1");
+        Files.write(live.toPath(), (ProcessHandle.current().pid() + "@"
+                                    + KeySearch.HOST).getBytes());
+        live.setLastModified(System.currentTimeMillis()
+                             - 2 * KeySearch.CLAIM_TIMEOUT_MILLIS);
+        File remote = new File(claims, "2");
+        Files.write(remote.toPath(), "1@elsewhere.invalid".getBytes());
+        KeySearch search = new KeySearch(dir);
+        search.work();
+        assertEquals(2, search.unitsLeft());
+        assertTrue(live.exists());
+        assertTrue(remote.exists());
+        assertFalse(new File(new File(dir, "done"), "1").exists());
+        remote.setLastModified(System.currentTimeMillis()
+                               - KeySearch.CLAIM_TIMEOUT_MILLIS);
+        search.work();
+        assertEquals(1, search.unitsLeft());
+        assertTrue(live.exists());
+        assertFalse(remote.exists());
+        live.delete();
+        search.work();
+        assertEquals(0, search.unitsLeft());
+        assertTrue(deciphers(dir, search.merge().entries().get(0).settings));
+    }
+
+    @Test
+    public void testOnlyTheOwnerTouchesOrRemovesAClaim() throws IOException {
+        File dir = searchDirectory("--top", "3");
+        File claim = new File(new File(dir, "claims"), "0");
+        long old = System.currentTimeMillis()
+            - KeySearch.CLAIM_TIMEOUT_MILLIS;
+        Files.write(claim.toPath(), "1@elsewhere.invalid".getBytes());
+        claim.setLastModified(old);
+        assertTrue(KeySearch.abandoned(claim));
+        KeySearch.touch(claim);
+        KeySearch.unclaim(claim);
+        assertTrue(claim.exists());
+        assertTrue(KeySearch.abandoned(claim));
+        Files.write(claim.toPath(), KeySearch.ME.getBytes());
+        claim.setLastModified(old);
+        assertFalse(KeySearch.abandoned(claim));
+        KeySearch.touch(claim);
+        assertTrue(claim.lastModified() > old);
+        KeySearch.unclaim(claim);
+        assertFalse(claim.exists());
+    }
+
+    @Test
+    public void testRunFinishesEveryUnit() throws IOException {
+        File dir = searchDirectory("--top", "3", "--crib", "WEATHER",
+                                   "--orders-per-unit", "3");
+        Files.write(new File(new File(dir, "claims"), "1").toPath(),
+                    ((1L << 40) + "@" + KeySearch.HOST).getBytes());
+        KeySearch search = new KeySearch(dir);
+        search.run(1);
+        assertEquals(0, search.unitsLeft());
+        String[] claims = new File(dir, "claims").list();
+        assertEquals(0, claims.length);
+    }
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.MachineTest.navalMachine;
+
+/** The suite of all JUnit tests for traffic statistics.
+ *  @author Zachary Zhang
+ */
+public class StatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCountsMatchAcrossPieces() throws IOException {
+        Alphabet alpha = new Alphabet("ABC");
+        Random rand = new Random(0);
+        byte[] bytes = new byte[2 * TrafficStats.CHUNK_SIZE + 12345];
+        long[] counts = new long[3];
+        long[][] bigrams = new long[3][3];
+        long messages = 0, other = 0;
+        int prev = -1;
+        for (int i = 0; i < bytes.length; i += 1) {
+            int r = rand.nextInt(20);
+            if (r == 0) {
+                bytes[i] = '\n';
+                prev = -1;
+            } else if (r == 1) {
+                bytes[i] = ' ';
+            } else if (r == 2) {
+                bytes[i] = '?';
+                other += 1;
+            } else {
+                int c = r % 3;
+                bytes[i] = (byte) alpha.toChar(c);
+                counts[c] += 1;
+                if (prev >= 0) {
+                    bigrams[prev][c] += 1;
+                } else {
+                    messages += 1;
+                }
+                prev = c;
+            }
+        }
+        File file = File.createTempFile("traffic", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        TrafficStats scanned = TrafficStats.scan(file, alpha, 3);
+        file.delete();
+        assertEquals(messages, scanned.messages());
+        assertEquals(other, scanned.other());
+        for (int a = 0; a < 3; a += 1) {
+            assertEquals(counts[a], scanned.count(a));
+            for (int b = 0; b < 3; b += 1) {
+                assertEquals(bigrams[a][b], scanned.bigram(a, b));
+            }
+        }
+    }
+
+    @Test
+    public void testReadStopsAtLimit() throws IOException {
+        Alphabet alpha = new Alphabet("ABC");
+        File file = File.createTempFile("traffic", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(),
+                    "AB C\n??\nCAB\nBBB\nCCC\n".getBytes("ISO-8859-1"));
+        ArrayList<int[]> messages = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        TrafficStats.read(file, alpha, 2, messages, names);
+        assertEquals(2, messages.size());
+        assertArrayEquals(new int[] { 0, 1, 2 }, messages.get(0));
+        assertArrayEquals(new int[] { 2, 0, 1 }, messages.get(1));
+        assertEquals(file + ":3", names.get(1));
+        TrafficStats.read(file, alpha, 4, messages, names);
+        assertEquals(4, messages.size());
+        assertEquals(file + ":1", names.get(2));
+        file.delete();
+    }
+
+    @Test
+    public void testDepthsFindSharedKeys() {
+        Random rand = new Random(0);
+        double total = 0;
+        for (double f : Scorer.ENGLISH) {
+            total += f;
+        }
+        String[] plains = new String[6];
+        for (int m = 0; m < plains.length; m += 1) {
+            StringBuilder plain = new StringBuilder();
+            while (plain.length() < 5000) {
+                double r = rand.nextDouble() * total;
+                int c = 0;
+                while (r >= Scorer.ENGLISH[c] && c < 25) {
+                    r -= Scorer.ENGLISH[c];
+                    c += 1;
+                }
+                plain.append((char) ('A' + c));
+            }
+            plains[m] = plain.toString();
+        }
+        List<int[]> messages = new ArrayList<>();
+        for (int m = 0; m < plains.length; m += 1) {
+            Machine M = navalMachine();
+            M.setUp(m == 1 || m == 4 ? "* B Beta III IV I AXLE (YF)"
+                    : "* B Beta III IV I " + "BCDFGH".charAt(m) + "QRS");
+            String cipher = M.convert(plains[m]);
+            int[] msg = new int[cipher.length()];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = cipher.charAt(i) - 'A';
+            }
+            messages.add(msg);
+        }
+        List<TrafficStats.Depth> depths =
+            TrafficStats.depths(messages, 50, 1.0 / 26, 5, 2);
+        assertEquals(1, depths.size());
+        assertEquals(1, depths.get(0).first);
+        assertEquals(4, depths.get(0).second);
+    }
+}
@@ -0,0 +1,200 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An engine that converts characters by table lookup alone.  For each
+ *  rotor slot it precomputes the substitution the rotor performs at every
+ *  one of its settings, so that converting a character involves no
+ *  modular arithmetic and no calls on the rotors themselves.
+ *  @author Zachary Zhang
+ */
+class TableEngine extends Engine {
+
+    /** An engine with the rotors, plugboard, and current rotor settings
+     *  of M, which must have had its rotors and plugboard set.  M itself
+     *  is not changed by my conversions. */
+    TableEngine(Machine M) {
+        _alphabet = M.alphabet();
+        _size = _alphabet.size();
+        int n = M.numRotors();
+        _forward = new int[n][];
+        _backward = new int[n][];
+        _notches = new boolean[n][];
+        _rotates = new boolean[n];
+        _positions = new int[n];
+        _moves = new boolean[n];
+        for (int k = 0; k < n; k += 1) {
+            Rotor rotor = M.rotor(k);
+            _forward[k] = shiftedTable(rotor.wiring(), _size);
+            _backward[k] = shiftedTable(rotor.inverseWiring(), _size);
+            _notches[k] = new boolean[_size];
+            for (int p = 0; p < _size; p += 1) {
+                _notches[k][p] = rotor.atNotch(p);
+            }
+            _rotates[k] = rotor.rotates();
+            _positions[k] = rotor.setting();
+        }
+        Permutation plugboard = M.plugboard();
+        if (plugboard == null) {
+            throw error("plugboard not set");
+        }
+        _plugboard = plugboard.table().clone();
+        _plugboardInverse = plugboard.inverseTable().clone();
+    }
+
+    /** Return the table T such that T[S * SIZE + P] is the image of P
+     *  under WIRING, a permutation of 0 .. SIZE-1, when its rotor is at
+     *  setting S. */
+    static int[] shiftedTable(int[] wiring, int size) {
+        int[] result = new int[size * size];
+        for (int s = 0; s < size; s += 1) {
+            for (int p = 0; p < size; p += 1) {
+                int c = wiring[(p + s) % size] - s;
+                result[s * size + p] = c < 0 ? c + size : c;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _positions.length;
+    }
+
+    /** Return a copy of the current settings of my rotors, indexed by
+     *  slot. */
+    int[] positions() {
+        return _positions.clone();
+    }
+
+    /** Set the settings of my rotors to POSITIONS, indexed by slot. */
+    void setPositions(int[] positions) {
+        if (positions.length != _positions.length) {
+            throw error("wrong number of rotor positions");
+        }
+        for (int k = 0; k < positions.length; k += 1) {
+            if (positions[k] < 0 || positions[k] >= _size) {
+                throw error("rotor position out of range");
+            }
+        }
+        System.arraycopy(positions, 0, _positions, 0, positions.length);
+    }
+
+    /** Advance my rotors as Machine.convert does before converting a
+     *  character. */
+    void advance() {
+        int last = _positions.length - 1;
+        boolean[] moves = _moves;
+        moves[last] = true;
+        for (int i = 0; i < last; i += 1) {
+            if (_rotates[i] && _notches[i + 1][_positions[i + 1]]) {
+                moves[i] = moves[i + 1] = true;
+            }
+        }
+        for (int i = 0; i <= last; i += 1) {
+            if (moves[i]) {
+                moves[i] = false;
+                if (_rotates[i]) {
+                    int p = _positions[i] + 1;
+                    _positions[i] = p == _size ? 0 : p;
+                }
+            }
+        }
+    }
+
+    /** Return the conversion of C by my rotors and plugboard at their
+     *  current settings, without advancing. */
+    int substitute(int c) {
+        int size = _size;
+        int[] positions = _positions;
+        int last = positions.length - 1;
+        int x = _plugboard[c];
+        for (int k = last; k >= 0; k -= 1) {
+            x = _forward[k][positions[k] * size + x];
+        }
+        for (int k = 1; k <= last; k += 1) {
+            x = _backward[k][positions[k] * size + x];
+        }
+        return _plugboardInverse[x];
+    }
+
+    @Override
+    int convert(int c) {
+        advance();
+        int result = substitute(c);
+        if (_trace != null) {
+            _trace.record(_positions, c, result);
+        }
+        return result;
+    }
+
+    @Override
+    void convert(int[] msg, int start, int end) {
+        TraceRecorder trace = _trace;
+        if (trace == null) {
+            for (int i = start; i < end; i += 1) {
+                advance();
+                msg[i] = substitute(msg[i]);
+            }
+        } else {
+            for (int i = start; i < end; i += 1) {
+                advance();
+                int c = msg[i];
+                msg[i] = substitute(c);
+                trace.record(_positions, c, msg[i]);
+            }
+        }
+    }
+
+    @Override
+    boolean canTrace() {
+        return true;
+    }
+
+    @Override
+    void trace(TraceRecorder recorder) {
+        if (recorder != null && recorder.slots() != _positions.length) {
+            throw error("trace has the wrong number of slots");
+        }
+        _trace = recorder;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Indexed by slot, forward substitution tables as by shiftedTable. */
+    private final int[][] _forward;
+
+    /** Indexed by slot, inverse substitution tables as by shiftedTable. */
+    private final int[][] _backward;
+
+    /** Indexed by slot and then setting, true where the rotor in that
+     *  slot is at a notch. */
+    private final boolean[][] _notches;
+
+    /** Indexed by slot, true where the rotor in that slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Current settings of my rotors, indexed by slot. */
+    private final int[] _positions;
+
+    /** Scratch array of the rotors that move on the current step. */
+    private final boolean[] _moves;
+
+    /** Plugboard table. */
+    private final int[] _plugboard;
+
+    /** Inverse plugboard table. */
+    private final int[] _plugboardInverse;
+
+    /** Recorder of my conversions, or null. */
+    private TraceRecorder _trace;
+}
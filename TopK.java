@@ -0,0 +1,111 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static enigma.EnigmaException.*;
+
+/** The K best-scoring candidate settings seen so far.  Safe for use by
+ *  multiple threads.
+ *  @author Zachary Zhang
+ */
+class TopK {
+
+    /** A collection retaining the best K > 0 candidates. */
+    TopK(int k) {
+        if (k <= 0) {
+            throw error("number of results must be positive");
+        }
+        _k = k;
+    }
+
+    /** Return true iff a candidate scoring SCORE would currently be
+     *  retained. */
+    synchronized boolean wants(double score) {
+        return _heap.size() < _k || score > _heap.peek().score;
+    }
+
+    /** Return the score a candidate must exceed to be retained, which is
+     *  negative infinity until K candidates have been seen. */
+    synchronized double threshold() {
+        return _heap.size() < _k ? Double.NEGATIVE_INFINITY
+            : _heap.peek().score;
+    }
+
+    /** Offer the candidate with settings line SETTINGS scoring SCORE. */
+    synchronized void add(double score, String settings) {
+        if (wants(score)) {
+            _heap.add(new Entry(score, settings));
+            if (_heap.size() > _k) {
+                _heap.poll();
+            }
+        }
+    }
+
+    /** Offer all the candidates in OTHER. */
+    void addAll(TopK other) {
+        for (Entry e : other.entries()) {
+            add(e.score, e.settings);
+        }
+    }
+
+    /** Return my candidates, best first. */
+    synchronized List<Entry> entries() {
+        ArrayList<Entry> result = new ArrayList<>(_heap);
+        result.sort(BY_SCORE.reversed());
+        return result;
+    }
+
+    /** Return my candidates, best first, one per line, each as its score
+     *  and settings line separated by a tab. */
+    String format() {
+        StringBuilder out = new StringBuilder();
+        for (Entry e : entries()) {
+            out.append(e.score).append('\t').append(e.settings).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Offer each of the candidates in TEXT, in the format produced by
+     *  format. */
+    void parse(String text) {
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", 2);
+            try {
+                add(Double.parseDouble(fields[0]), fields[1]);
+            } catch (NumberFormatException
+                     | ArrayIndexOutOfBoundsException excp) {
+                throw error("bad result line: %s", line);
+            }
+        }
+    }
+
+    /** A candidate and its score. */
+    static final class Entry {
+        /** A candidate with settings line SETTINGS scoring SCORE. */
+        Entry(double score, String settings) {
+            this.score = score;
+            this.settings = settings;
+        }
+
+        /** Score. */
+        final double score;
+        /** Settings line in the format read by Machine.setUp. */
+        final String settings;
+    }
+
+    /** Orders entries by increasing score. */
+    private static final Comparator<Entry> BY_SCORE =
+        Comparator.comparingDouble(e -> e.score);
+
+    /** Number of candidates retained. */
+    private final int _k;
+
+    /** Retained candidates, worst at the head. */
+    private final PriorityQueue<Entry> _heap = new PriorityQueue<>(BY_SCORE);
+}
@@ -0,0 +1,367 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A trace written by TraceRecorder, and the commands that examine
+ *  traces.  The records still in a trace are numbered, as when they were
+ *  written, from first() to count() - 1, and the settings lines still in
+ *  it from firstSettings() to settingsCount() - 1.
+ *  @author Zachary Zhang
+ */
+public final class TraceReader {
+
+    /** Perform the command in ARGS, one of
+     *      dump TRACE [CONFIG]
+     *          Print each record of TRACE as its number, its rotor
+     *          settings, and its input and output, as characters of the
+     *          alphabet of the configuration file CONFIG if given and
+     *          otherwise as numbers, preceded by each settings line
+     *          recorded in TRACE.
+     *      replay CONFIG [SETTINGS] TRACE
+     *          Check each record of TRACE against the machine of CONFIG
+     *          set up by the settings line recorded before it in TRACE
+     *          or, for records before the first such line, by SETTINGS
+     *          (whose rotor positions are ignored): that the machine
+     *          converts the record's input to its output at its
+     *          settings, and that those settings follow by one step from
+     *          the previous record's or from those of the settings line.
+     *          Records with no settings line are left unchecked.  Prints
+     *          the first mismatches and a summary.
+     *      diff TRACE1 TRACE2
+     *          Compare the records with the same numbers in TRACE1 and
+     *          TRACE2, printing the first that differ and a summary.
+     *  Exits normally on success (and, for replay and diff, if no
+     *  conversions mismatch or differ); otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            boolean ok;
+            if (args.length >= 2 && args.length <= 3
+                && args[0].equals("dump")) {
+                TraceReader trace = new TraceReader(new File(args[1]));
+                Alphabet alpha =
+                    args.length == 3 ? readConfig(args[2]).alphabet() : null;
+                trace.dump(alpha, System.out);
+                ok = true;
+            } else if (args.length >= 3 && args.length <= 4
+                       && args[0].equals("replay")) {
+                Machine M = readConfig(args[1]);
+                if (args.length == 4) {
+                    M.setUp(args[2]);
+                }
+                ok = new TraceReader(new File(args[args.length - 1]))
+                    .replay(M, System.out);
+            } else if (args.length == 3 && args[0].equals("diff")) {
+                ok = new TraceReader(new File(args[1]))
+                    .diff(new TraceReader(new File(args[2])), System.out);
+            } else {
+                throw error("usage: TraceReader dump TRACE [CONFIG] | "
+                            + "replay CONFIG [SETTINGS] TRACE | "
+                            + "diff TRACE1 TRACE2");
+            }
+            if (ok) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the machine described by the configuration file NAME. */
+    private static Machine readConfig(String name) {
+        try (Scanner config = new Scanner(new File(name))) {
+            return new Main(config, null, null).readConfig();
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** The trace in FILE. */
+    TraceReader(File file) {
+        this(read(file));
+    }
+
+    /** The trace in BUFFER, as TraceRecorder.contents returns. */
+    TraceReader(ByteBuffer buffer) {
+        _buffer = buffer.duplicate();
+        if (_buffer.limit() < TraceRecorder.HEADER_SIZE
+            || _buffer.getInt(0) != TraceRecorder.MAGIC
+            || _buffer.getInt(4) != TraceRecorder.VERSION) {
+            throw error("not a trace");
+        }
+        _slots = _buffer.getInt(8);
+        _size = _buffer.getInt(12);
+        long capacity = _buffer.getLong(16);
+        _count = _buffer.getLong(24);
+        _settingsCapacity = _buffer.getInt(32);
+        _settingsCount = _buffer.getLong(40);
+        if (_slots <= 0 || capacity <= 0 || _count < 0
+            || _settingsCapacity <= 0 || _settingsCount < 0
+            || TraceRecorder.HEADER_SIZE + capacity * (_slots + 2)
+               + (long) _settingsCapacity * TraceRecorder.SETTINGS_SIZE
+               != _buffer.limit()) {
+            throw error("trace is damaged");
+        }
+        _capacity = (int) capacity;
+        _settingsStart = TraceRecorder.HEADER_SIZE
+            + _capacity * (_slots + 2);
+    }
+
+    /** Return the contents of FILE. */
+    private static ByteBuffer read(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the number of slots in each record. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the size of the alphabet of the traced engine. */
+    int alphabetSize() {
+        return _size;
+    }
+
+    /** Return the number of the oldest record still present. */
+    long first() {
+        return Math.max(0, _count - _capacity);
+    }
+
+    /** Return the number of records written. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the number of the oldest settings line still present. */
+    long firstSettings() {
+        return Math.max(0, _settingsCount - _settingsCapacity);
+    }
+
+    /** Return the number of settings lines recorded. */
+    long settingsCount() {
+        return _settingsCount;
+    }
+
+    /** Return the offset of settings line J, which must be present. */
+    private int settingsOffset(long j) {
+        if (j < firstSettings() || j >= _settingsCount) {
+            throw error("settings line %d is not in the trace", j);
+        }
+        return _settingsStart
+            + (int) (j % _settingsCapacity) * TraceRecorder.SETTINGS_SIZE;
+    }
+
+    /** Return the number of the first record made under settings line
+     *  J. */
+    long settingsRecord(long j) {
+        return _buffer.getLong(settingsOffset(j));
+    }
+
+    /** Return settings line J, or null if it was too long to keep. */
+    String settingsLine(long j) {
+        int at = settingsOffset(j);
+        int length = _buffer.getInt(at + 8);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        _buffer.get(at + 12, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the offset of record I, which must be present. */
+    private int offset(long i) {
+        if (i < first() || i >= _count) {
+            throw error("record %d is not in the trace", i);
+        }
+        return TraceRecorder.HEADER_SIZE + (int) (i % _capacity)
+            * (_slots + 2);
+    }
+
+    /** Set POSITIONS, indexed by slot, to the rotor settings of record
+     *  I. */
+    void positions(long i, int[] positions) {
+        int at = offset(i);
+        for (int k = 0; k < _slots; k += 1) {
+            positions[k] = _buffer.get(at + k) & 0xff;
+        }
+    }
+
+    /** Return the input character of record I. */
+    int input(long i) {
+        return _buffer.get(offset(i) + _slots) & 0xff;
+    }
+
+    /** Return the output character of record I. */
+    int output(long i) {
+        return _buffer.get(offset(i) + _slots + 1) & 0xff;
+    }
+
+    /** Return record I as a line of text, its characters in ALPHA or, if
+     *  ALPHA is null, as numbers. */
+    String format(long i, Alphabet alpha) {
+        int[] positions = new int[_slots];
+        positions(i, positions);
+        StringBuilder line = new StringBuilder();
+        line.append(i).append(' ');
+        for (int k = 0; k < _slots; k += 1) {
+            if (alpha == null) {
+                line.append(k == 0 ? "" : ",").append(positions[k]);
+            } else {
+                line.append(alpha.toChar(positions[k]));
+            }
+        }
+        if (alpha == null) {
+            line.append(' ').append(input(i)).append(' ').append(output(i));
+        } else {
+            line.append(' ').append(alpha.toChar(input(i))).append(' ')
+                .append(alpha.toChar(output(i)));
+        }
+        return line.toString();
+    }
+
+    /** Print my settings lines and records on OUT, as for the dump
+     *  command, with characters in ALPHA or, if ALPHA is null, as
+     *  numbers. */
+    void dump(Alphabet alpha, PrintStream out) {
+        long j = firstSettings();
+        for (long i = first(); i < _count; i += 1) {
+            while (j < _settingsCount && settingsRecord(j) <= i) {
+                String line = settingsLine(j);
+                out.println(line == null ? "(settings line not kept)"
+                            : line);
+                j += 1;
+            }
+            out.println(format(i, alpha));
+        }
+    }
+
+    /** Check my records against M, as for the replay command, printing
+     *  the first problems and a summary on OUT.  Records before the
+     *  first of my settings lines are checked against M as it is, if its
+     *  rotors and plugboard have been set; M is set up by each of my
+     *  settings lines in turn.  Return true iff every record's
+     *  conversion that could be checked matches. */
+    boolean replay(Machine M, PrintStream out) {
+        if (M.numRotors() != _slots || M.alphabet().size() != _size) {
+            throw error("trace is not of this machine");
+        }
+        TableEngine engine =
+            M.plugboard() == null ? null : new TableEngine(M);
+        int[] positions = new int[_slots];
+        int[] stepped = null;
+        long mismatches = 0, jumps = 0, unchecked = 0;
+        long j = firstSettings();
+        for (long i = first(); i < _count; i += 1) {
+            while (j < _settingsCount && settingsRecord(j) <= i) {
+                String line = settingsLine(j);
+                if (line == null) {
+                    engine = null;
+                } else {
+                    M.setUp(line);
+                    engine = new TableEngine(M);
+                    stepped = settingsRecord(j) == i
+                        ? engine.positions() : null;
+                }
+                j += 1;
+            }
+            if (engine == null) {
+                unchecked += 1;
+                continue;
+            }
+            positions(i, positions);
+            if (stepped != null) {
+                engine.setPositions(stepped);
+                engine.advance();
+                if (!Arrays.equals(engine.positions(), positions)) {
+                    jumps += 1;
+                }
+            }
+            engine.setPositions(positions);
+            if (engine.substitute(input(i)) != output(i)) {
+                if (mismatches < MAX_REPORTED) {
+                    out.printf("mismatch: %s%n", format(i, M.alphabet()));
+                }
+                mismatches += 1;
+            }
+            stepped = positions.clone();
+        }
+        out.printf("%d records, %d mismatched, %d discontinuities, "
+                   + "%d unchecked%n",
+                   _count - first(), mismatches, jumps, unchecked);
+        return mismatches == 0;
+    }
+
+    /** Compare my records with those of OTHER that have the same numbers,
+     *  printing the first differences and a summary on OUT.  Return true
+     *  iff they have the same numbers of slots and no records differ. */
+    boolean diff(TraceReader other, PrintStream out) {
+        if (other._slots != _slots || other._size != _size) {
+            out.println("traces are of different machines");
+            return false;
+        }
+        long from = Math.max(first(), other.first());
+        long to = Math.min(_count, other._count);
+        long differences = 0;
+        for (long i = from; i < to; i += 1) {
+            int a = offset(i), b = other.offset(i);
+            for (int j = 0; j < _slots + 2; j += 1) {
+                if (_buffer.get(a + j) != other._buffer.get(b + j)) {
+                    if (differences < MAX_REPORTED) {
+                        out.printf("< %s%n> %s%n", format(i, null),
+                                   other.format(i, null));
+                    }
+                    differences += 1;
+                    break;
+                }
+            }
+        }
+        out.printf("%d common records, %d differ; counts %d and %d%n",
+                   Math.max(0, to - from), differences, _count,
+                   other._count);
+        return differences == 0;
+    }
+
+    /** Maximum number of problems printed by replay and diff. */
+    static final int MAX_REPORTED = 10;
+
+    /** Header and rings. */
+    private final ByteBuffer _buffer;
+
+    /** Number of slots in each record. */
+    private final int _slots;
+
+    /** Size of the traced alphabet. */
+    private final int _size;
+
+    /** Number of records in the ring. */
+    private final int _capacity;
+
+    /** Number of records written. */
+    private final long _count;
+
+    /** Number of settings lines in their ring. */
+    private final int _settingsCapacity;
+
+    /** Number of settings lines written. */
+    private final long _settingsCount;
+
+    /** Offset of the ring of settings lines in _buffer. */
+    private final int _settingsStart;
+}
@@ -0,0 +1,272 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Records, for each character an engine converts, the settings of its
+ *  rotors as used for that character (after advancing) and the input and
+ *  output characters, in a ring of the most recent CAPACITY records held
+ *  in memory or in a memory-mapped file.  Each record is one byte per
+ *  slot followed by the input and output bytes, so alphabets may have
+ *  at most 256 characters.  Records are packed into a staging array,
+ *  with a single store when a record fits in a long, and copied into
+ *  the ring a block at a time.  The settings lines under which records
+ *  are made are kept in a second ring of the last SETTINGS_CAPACITY
+ *  lines, each entry of SETTINGS_SIZE bytes holding the number of the
+ *  first record made under the line (a long), the length of the line in
+ *  bytes (an int, or -1 if the line was too long to keep), and the line
+ *  in UTF-8.  The file (or memory) layout is a header of HEADER_SIZE
+ *  bytes,
+ *      MAGIC, VERSION, slots, alphabet size (ints),
+ *      capacity, records written (longs),
+ *      settings capacity, 0 (ints), settings lines written (long),
+ *  followed by the ring of records, in which record I is number I mod
+ *  capacity, and then by the ring of settings lines, in which line J is
+ *  number J mod settings capacity.  TraceReader reads, replays, and
+ *  compares traces.
+ *  @author Zachary Zhang
+ */
+class TraceRecorder implements Closeable {
+
+    /** A recorder, held in memory, of the last CAPACITY conversions of an
+     *  engine with SLOTS rotor slots and an alphabet of SIZE
+     *  characters. */
+    TraceRecorder(int slots, int size, int capacity) {
+        this(slots, size, capacity,
+             ByteBuffer.allocate(length(slots, size, capacity)));
+    }
+
+    /** A recorder, kept in the memory-mapped FILE, which is overwritten,
+     *  of the last CAPACITY conversions of an engine with SLOTS rotor
+     *  slots and an alphabet of SIZE characters. */
+    TraceRecorder(File file, int slots, int size, int capacity) {
+        this(slots, size, capacity, map(file, length(slots, size, capacity)));
+    }
+
+    /** A recorder for SLOTS slots and SIZE characters writing the last
+     *  CAPACITY records to BUFFER. */
+    private TraceRecorder(int slots, int size, int capacity,
+                          ByteBuffer buffer) {
+        _slots = slots;
+        _recordSize = slots + 2;
+        _capacity = capacity;
+        _buffer = buffer;
+        _stage = new byte[STAGE_RECORDS * _recordSize + 8];
+        _positions = new int[slots];
+        _settingsStart = HEADER_SIZE + capacity * _recordSize;
+        _buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slots)
+            .putInt(12, size).putLong(16, capacity).putLong(24, 0)
+            .putInt(32, SETTINGS_CAPACITY).putInt(36, 0).putLong(40, 0);
+    }
+
+    /** Return the number of bytes in a trace of CAPACITY records for SLOTS
+     *  slots and an alphabet of SIZE characters, checking that they are
+     *  possible. */
+    private static int length(int slots, int size, int capacity) {
+        if (slots <= 0 || size <= 0 || size > MAX_SIZE) {
+            throw error("cannot trace %d slots with %d characters",
+                        slots, size);
+        }
+        long length = HEADER_SIZE + (long) capacity * (slots + 2)
+            + SETTINGS_CAPACITY * SETTINGS_SIZE;
+        if (capacity <= 0 || length > Integer.MAX_VALUE) {
+            throw error("bad trace capacity: %d", capacity);
+        }
+        return (int) length;
+    }
+
+    /** Return LENGTH bytes of FILE, created or truncated to that length,
+     *  mapped for writing. */
+    private static MappedByteBuffer map(File file, int length) {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             FileChannel channel = out.getChannel()) {
+            out.setLength(0);
+            out.setLength(length);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException excp) {
+            throw error("could not create %s", file);
+        }
+    }
+
+    /** Return the number of slots in my records. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the number of records I keep. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of records written so far, including those
+     *  since overwritten. */
+    long count() {
+        return _written + _staged;
+    }
+
+    /** Record the conversion of IN to OUT with the rotors at POSITIONS,
+     *  indexed by slot.  A record that fits in a long is packed into one
+     *  and staged with a single store. */
+    void record(int[] positions, int in, int out) {
+        byte[] stage = _stage;
+        int n = _slots, i = _staged * _recordSize;
+        if (_recordSize <= 8) {
+            long packed = ((long) out << 8 | in) << 8 * n | positions[0];
+            if (n > 1) {
+                packed |= positions[1] << 8;
+            }
+            if (n > 2) {
+                packed |= positions[2] << 16;
+            }
+            if (n > 3) {
+                packed |= (long) positions[3] << 24;
+            }
+            if (n > 4) {
+                packed |= (long) positions[4] << 32;
+            }
+            if (n > 5) {
+                packed |= (long) positions[5] << 40;
+            }
+            LONGS.set(stage, i, packed);
+        } else {
+            for (int k = 0; k < n; k += 1) {
+                stage[i + k] = (byte) positions[k];
+            }
+            stage[i + n] = (byte) in;
+            stage[i + n + 1] = (byte) out;
+        }
+        _staged += 1;
+        if (_staged == STAGE_RECORDS) {
+            flush();
+        }
+    }
+
+    /** Record that the records that follow are made by an engine set
+     *  up by the settings line LINE.  A line too long for an entry is
+     *  kept as unknown. */
+    void settings(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        int at = _settingsStart
+            + (int) (_settingsWritten % SETTINGS_CAPACITY) * SETTINGS_SIZE;
+        _buffer.putLong(at, count());
+        if (bytes.length > SETTINGS_SIZE - 12) {
+            _buffer.putInt(at + 8, -1);
+        } else {
+            _buffer.putInt(at + 8, bytes.length);
+            _buffer.put(at + 12, bytes);
+        }
+        _settingsWritten += 1;
+        _buffer.putLong(40, _settingsWritten);
+    }
+
+    /** Record the conversion of IN to OUT by M at its current rotor
+     *  settings. */
+    void record(Machine M, int in, int out) {
+        int[] positions = _positions;
+        for (int k = 0; k < _slots; k += 1) {
+            positions[k] = M.rotor(k).setting();
+        }
+        record(positions, in, out);
+    }
+
+    /** Copy the staged records into the ring and update the count in
+     *  the header. */
+    void flush() {
+        int from = 0;
+        while (from < _staged) {
+            int slot = (int) ((_written + from) % _capacity);
+            int n = Math.min(_staged - from, _capacity - slot);
+            _buffer.put(HEADER_SIZE + slot * _recordSize, _stage,
+                        from * _recordSize, n * _recordSize);
+            from += n;
+        }
+        _written += _staged;
+        _staged = 0;
+        _buffer.putLong(24, _written);
+    }
+
+    /** Return a read-only view of my trace, as TraceReader reads it. */
+    ByteBuffer contents() {
+        flush();
+        return _buffer.asReadOnlyBuffer();
+    }
+
+    /** Flush my records and, if I am kept in a file, write it out. */
+    @Override
+    public void close() {
+        flush();
+        if (_buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) _buffer).force();
+        }
+    }
+
+    /** Identifies a trace. */
+    static final int MAGIC = 0x454e5452;
+
+    /** Version of the trace layout. */
+    static final int VERSION = 2;
+
+    /** Bytes in the header. */
+    static final int HEADER_SIZE = 48;
+
+    /** Number of settings lines kept. */
+    static final int SETTINGS_CAPACITY = 1 << 12;
+
+    /** Bytes in each entry of the ring of settings lines. */
+    static final int SETTINGS_SIZE = 256;
+
+    /** Largest alphabet whose characters fit in a byte. */
+    static final int MAX_SIZE = 256;
+
+    /** Default number of records kept. */
+    static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /** View of a byte array as little-endian longs. */
+    private static final VarHandle LONGS =
+        MethodHandles.byteArrayViewVarHandle(long[].class,
+                                             ByteOrder.LITTLE_ENDIAN);
+
+    /** Records staged before they are copied into the ring. */
+    static final int STAGE_RECORDS = 1 << 12;
+
+    /** Number of slots in each record. */
+    private final int _slots;
+
+    /** Bytes in each record. */
+    private final int _recordSize;
+
+    /** Records in the ring. */
+    private final int _capacity;
+
+    /** Header and rings. */
+    private final ByteBuffer _buffer;
+
+    /** Offset of the ring of settings lines in _buffer. */
+    private final int _settingsStart;
+
+    /** Records not yet copied into the ring. */
+    private final byte[] _stage;
+
+    /** Scratch array of rotor settings. */
+    private final int[] _positions;
+
+    /** Number of records in _stage. */
+    private int _staged;
+
+    /** Number of records copied into the ring. */
+    private long _written;
+
+    /** Number of settings lines recorded. */
+    private long _settingsWritten;
+}
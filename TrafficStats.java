@@ -0,0 +1,522 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** Character statistics of intercepted traffic: the frequency of each
+ *  character of an alphabet, the frequency of each pair of adjacent
+ *  characters within a message, and the index of coincidence, together
+ *  with the detection of pairs of messages in depth (enciphered with the
+ *  same key stream), whose characters coincide at the same offsets at
+ *  the rate of plaintext rather than of random text.  Traffic is read as
+ *  bytes (ISO-8859-1 characters), one message per line, with blanks
+ *  ignored.  Files are read a chunk at a time, and each chunk is counted
+ *  by fork/join tasks into primitive histograms that are then merged,
+ *  so that files of any size may be processed.
+ *  @author Zachary Zhang
+ */
+public final class TrafficStats {
+
+    /** Print a report on the traffic in files.  ARGS are
+     *      CONFIG FILE... [--threads N] [--top N] [--depth N]
+     *                     [--threshold X]
+     *  where CONFIG is a configuration file supplying the alphabet and
+     *  each line of each FILE is one message.  Prints the counts, index
+     *  of coincidence, character frequencies, and the N (default 20) most
+     *  frequent pairs, using N threads (default: the number of
+     *  processors).  With --depth, also compares each pair of the first N
+     *  messages, and prints those whose coincidences exceed what the
+     *  index of coincidence of the traffic predicts for unrelated
+     *  messages by at least X (default DEPTH_SIGMAS) standard
+     *  deviations, over at least MIN_OVERLAP characters.  Exits normally
+     *  on success; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            ArrayList<File> files = new ArrayList<>();
+            int threads = Runtime.getRuntime().availableProcessors();
+            int top = DEFAULT_TOP, depth = 0;
+            double sigmas = DEPTH_SIGMAS;
+            for (int i = 1; i < args.length; i += 1) {
+                boolean more = i + 1 < args.length;
+                if (args[i].equals("--threads") && more) {
+                    threads = parseInt(args[i + 1]);
+                    i += 1;
+                } else if (args[i].equals("--top") && more) {
+                    top = parseInt(args[i + 1]);
+                    i += 1;
+                } else if (args[i].equals("--depth") && more) {
+                    depth = parseInt(args[i + 1]);
+                    i += 1;
+                } else if (args[i].equals("--threshold") && more) {
+                    sigmas = parseDouble(args[i + 1]);
+                    i += 1;
+                } else {
+                    files.add(new File(args[i]));
+                }
+            }
+            if (files.isEmpty() || threads <= 0) {
+                throw error("usage: TrafficStats CONFIG FILE... "
+                            + "[--threads N] [--top N] [--depth N] "
+                            + "[--threshold X]");
+            }
+            Alphabet alpha;
+            try (Scanner config = new Scanner(new File(args[0]))) {
+                alpha = new Main(config, null, null).readConfig().alphabet();
+            } catch (IOException excp) {
+                throw error("could not read %s", args[0]);
+            }
+            TrafficStats stats = new TrafficStats(alpha);
+            for (File file : files) {
+                stats.merge(scan(file, alpha, threads));
+            }
+            stats.report(System.out, top);
+            if (depth > 0) {
+                ArrayList<int[]> messages = new ArrayList<>();
+                ArrayList<String> names = new ArrayList<>();
+                for (int i = 0; i < files.size()
+                         && messages.size() < depth; i += 1) {
+                    read(files.get(i), alpha, depth, messages, names);
+                }
+                List<Depth> depths =
+                    depths(messages, MIN_OVERLAP,
+                           stats.indexOfCoincidence(), sigmas, threads);
+                System.out.printf("%d pairs in depth among %d messages%n",
+                                  depths.size(), messages.size());
+                for (Depth d : depths) {
+                    System.out.printf("%s %s %d %d %.1f%n",
+                                      names.get(d.first),
+                                      names.get(d.second), d.overlap,
+                                      d.coincidences, d.sigmas);
+                }
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return S as an integer. */
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Return S as a double. */
+    private static double parseDouble(String s) {
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Add the messages of FILE, as indices in ALPHA (other characters
+     *  dropped), to MESSAGES, and their names, as FILE:LINE, to NAMES,
+     *  until MESSAGES holds LIMIT messages.  Reads FILE a line at a time,
+     *  and no further than it must. */
+    static void read(File file, Alphabet alpha, int limit,
+                     List<int[]> messages, List<String> names) {
+        try (BufferedReader in =
+             Files.newBufferedReader(file.toPath(),
+                                     StandardCharsets.ISO_8859_1)) {
+            String line;
+            for (int n = 1; messages.size() < limit
+                     && (line = in.readLine()) != null; n += 1) {
+                int[] msg = new int[line.length()];
+                int len = 0;
+                for (int i = 0; i < line.length(); i += 1) {
+                    if (alpha.contains(line.charAt(i))) {
+                        msg[len] = alpha.toInt(line.charAt(i));
+                        len += 1;
+                    }
+                }
+                if (len > 0) {
+                    messages.add(Arrays.copyOf(msg, len));
+                    names.add(file + ":" + n);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Empty statistics for texts in ALPHA, whose characters must all be
+     *  ISO-8859-1 characters. */
+    TrafficStats(Alphabet alpha) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        _counts = new long[_size];
+        _bigrams = new long[_size * _size];
+        _codes = new int[BYTES];
+        Arrays.fill(_codes, OTHER);
+        _codes['\n'] = _codes['\r'] = LINE;
+        _codes[' '] = _codes['\t'] = BLANK;
+        for (int c = 0; c < _size; c += 1) {
+            char ch = alpha.toChar(c);
+            if (ch >= BYTES) {
+                throw error("character %c is not a byte", ch);
+            }
+            _codes[ch] = c;
+        }
+    }
+
+    /** Return the statistics of the traffic in FILE, whose messages are
+     *  in ALPHA, counting with THREADS threads. */
+    static TrafficStats scan(File file, Alphabet alpha, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        TrafficStats result = new TrafficStats(alpha);
+        ArrayDeque<ForkJoinTask<TrafficStats>> pending = new ArrayDeque<>();
+        try (InputStream in = new FileInputStream(file)) {
+            int prev = -1;
+            while (true) {
+                byte[] chunk = in.readNBytes(CHUNK_SIZE);
+                if (chunk.length == 0) {
+                    break;
+                }
+                pending.add(pool.submit(new Count(result, chunk, 0,
+                                                  chunk.length, prev)));
+                prev = result.previous(chunk, 0, chunk.length, prev);
+                if (pending.size() >= 2 * threads) {
+                    result.merge(pending.remove().join());
+                }
+            }
+            while (!pending.isEmpty()) {
+                result.merge(pending.remove().join());
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Return the last character (as an index) of BUF[START .. END-1]
+     *  that follows the last line break there, or -1 if the range has a
+     *  line break with no character after it.  If the range has neither,
+     *  return PREV. */
+    private int previous(byte[] buf, int start, int end, int prev) {
+        for (int i = end - 1; i >= start; i -= 1) {
+            int c = _codes[buf[i] & 0xff];
+            if (c >= 0) {
+                return c;
+            } else if (c == LINE) {
+                return -1;
+            }
+        }
+        return prev;
+    }
+
+    /** Count the characters of BUF[START .. END-1], where PREV is the
+     *  character (as an index) preceding START in the same message, or
+     *  -1 if START begins a message. */
+    void add(byte[] buf, int start, int end, int prev) {
+        int[] codes = _codes;
+        long[] counts = _counts, bigrams = _bigrams;
+        int size = _size;
+        long messages = 0, other = 0;
+        for (int i = start; i < end; i += 1) {
+            int c = codes[buf[i] & 0xff];
+            if (c >= 0) {
+                counts[c] += 1;
+                if (prev >= 0) {
+                    bigrams[prev * size + c] += 1;
+                } else {
+                    messages += 1;
+                }
+                prev = c;
+            } else if (c == LINE) {
+                prev = -1;
+            } else if (c == OTHER) {
+                other += 1;
+            }
+        }
+        _messages += messages;
+        _other += other;
+    }
+
+    /** Add the counts of OTHER, which must be for the same alphabet, to
+     *  mine. */
+    void merge(TrafficStats other) {
+        for (int c = 0; c < _size; c += 1) {
+            _counts[c] += other._counts[c];
+        }
+        for (int i = 0; i < _bigrams.length; i += 1) {
+            _bigrams[i] += other._bigrams[i];
+        }
+        _messages += other._messages;
+        _other += other._other;
+    }
+
+    /** A fork/join task counting part of a chunk of traffic. */
+    private static final class Count extends RecursiveTask<TrafficStats> {
+        /** Serialization version (RecursiveTask is Serializable, though I
+         *  am never serialized). */
+        private static final long serialVersionUID = 1L;
+
+        /** A task counting BUF[START .. END-1] with statistics like
+         *  MODEL's, where PREV is the character preceding BUF[0] in the
+         *  same message, or -1. */
+        Count(TrafficStats model, byte[] buf, int start, int end,
+              int prev) {
+            _model = model;
+            _buf = buf;
+            _start = start;
+            _end = end;
+            _prev = prev;
+        }
+
+        @Override
+        protected TrafficStats compute() {
+            if (_end - _start <= LEAF_SIZE) {
+                TrafficStats result = new TrafficStats(_model._alphabet);
+                result.add(_buf, _start, _end,
+                           _model.previous(_buf, 0, _start, _prev));
+                return result;
+            }
+            int mid = (_start + _end) >>> 1;
+            Count right = new Count(_model, _buf, mid, _end, _prev);
+            right.fork();
+            TrafficStats result =
+                new Count(_model, _buf, _start, mid, _prev).compute();
+            result.merge(right.join());
+            return result;
+        }
+
+        /** Statistics whose alphabet and codes I use. */
+        private final TrafficStats _model;
+        /** The chunk. */
+        private final byte[] _buf;
+        /** Range of _buf to count. */
+        private final int _start, _end;
+        /** Character preceding _buf[0] in its message, or -1. */
+        private final int _prev;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of characters counted. */
+    long characters() {
+        long total = 0;
+        for (long n : _counts) {
+            total += n;
+        }
+        return total;
+    }
+
+    /** Return the number of messages: lines with at least one character
+     *  in my alphabet. */
+    long messages() {
+        return _messages;
+    }
+
+    /** Return the number of characters skipped that were neither in my
+     *  alphabet, blanks, nor line breaks. */
+    long other() {
+        return _other;
+    }
+
+    /** Return the number of occurrences of C (an index). */
+    long count(int c) {
+        return _counts[c];
+    }
+
+    /** Return the number of times B immediately follows A (both indices)
+     *  in a message. */
+    long bigram(int a, int b) {
+        return _bigrams[a * _size + b];
+    }
+
+    /** Return the index of coincidence: the probability that two
+     *  characters drawn at random without replacement are the same. */
+    double indexOfCoincidence() {
+        long n = characters();
+        if (n < 2) {
+            return 0;
+        }
+        double same = 0;
+        for (long k : _counts) {
+            same += (double) k * (k - 1);
+        }
+        return same / ((double) n * (n - 1));
+    }
+
+    /** Print my statistics on OUT, with the TOP most frequent pairs. */
+    void report(PrintStream out, int top) {
+        long n = characters();
+        out.printf("%d characters in %d messages (%d others skipped)%n",
+                   n, _messages, _other);
+        double ic = indexOfCoincidence();
+        out.printf("index of coincidence %.5f (%.3f times random)%n",
+                   ic, ic * _size);
+        Integer[] order = new Integer[_size];
+        for (int c = 0; c < _size; c += 1) {
+            order[c] = c;
+        }
+        Arrays.sort(order, Comparator.comparingLong(c -> -_counts[c]));
+        for (int c : order) {
+            out.printf("%c %d %.3f%%%n", _alphabet.toChar(c), _counts[c],
+                       n == 0 ? 0.0 : 100.0 * _counts[c] / n);
+        }
+        Integer[] pairs = new Integer[_bigrams.length];
+        for (int i = 0; i < pairs.length; i += 1) {
+            pairs[i] = i;
+        }
+        Arrays.sort(pairs, Comparator.comparingLong(i -> -_bigrams[i]));
+        for (int i = 0; i < Math.min(top, pairs.length); i += 1) {
+            int p = pairs[i];
+            out.printf("%c%c %d%n", _alphabet.toChar(p / _size),
+                       _alphabet.toChar(p % _size), _bigrams[p]);
+        }
+    }
+
+    /** Return the pairs among MESSAGES (as indices), overlapping by at
+     *  least MINOVERLAP characters, whose characters at the same offsets
+     *  coincide at least SIGMAS standard deviations more often than at
+     *  the rate RANDOM of unrelated messages, most significant first,
+     *  comparing with THREADS threads. */
+    static List<Depth> depths(List<int[]> messages, int minOverlap,
+                              double random, double sigmas, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<ForkJoinTask<List<Depth>>> tasks = new ArrayList<>();
+            for (int i = 0; i < messages.size(); i += 1) {
+                int first = i;
+                tasks.add(pool.submit(() -> depths(messages, first,
+                                                   minOverlap, random,
+                                                   sigmas)));
+            }
+            ArrayList<Depth> result = new ArrayList<>();
+            for (ForkJoinTask<List<Depth>> task : tasks) {
+                result.addAll(task.join());
+            }
+            result.sort(Comparator.comparingDouble((Depth d) -> -d.sigmas)
+                        .thenComparingInt(d -> d.first)
+                        .thenComparingInt(d -> d.second));
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the pairs of message number FIRST of MESSAGES and later
+     *  messages that are in depth, as for depths. */
+    private static List<Depth> depths(List<int[]> messages, int first,
+                                      int minOverlap, double random,
+                                      double sigmas) {
+        ArrayList<Depth> result = new ArrayList<>();
+        int[] a = messages.get(first);
+        for (int j = first + 1; j < messages.size(); j += 1) {
+            int[] b = messages.get(j);
+            int overlap = Math.min(a.length, b.length);
+            if (overlap < minOverlap) {
+                continue;
+            }
+            int same = 0;
+            for (int i = 0; i < overlap; i += 1) {
+                if (a[i] == b[i]) {
+                    same += 1;
+                }
+            }
+            double z = (same - overlap * random)
+                / Math.sqrt(overlap * random * (1 - random));
+            if (z >= sigmas) {
+                result.add(new Depth(first, j, overlap, same, z));
+            }
+        }
+        return result;
+    }
+
+    /** A pair of messages that appear to be in depth. */
+    static final class Depth {
+        /** Messages FIRST and SECOND, whose first OVERLAP characters
+         *  coincide at COINCIDENCES offsets, SIGMAS standard deviations
+         *  more than expected of unrelated messages. */
+        Depth(int first, int second, int overlap, int coincidences,
+              double sigmas) {
+            this.first = first;
+            this.second = second;
+            this.overlap = overlap;
+            this.coincidences = coincidences;
+            this.sigmas = sigmas;
+        }
+
+        /** Indices of the messages. */
+        final int first, second;
+        /** Number of offsets compared. */
+        final int overlap;
+        /** Number of offsets at which the messages coincide. */
+        final int coincidences;
+        /** Significance of the coincidences, in standard deviations. */
+        final double sigmas;
+    }
+
+    /** Default number of pairs reported. */
+    static final int DEFAULT_TOP = 20;
+
+    /** Default significance, in standard deviations, of the coincidences
+     *  of messages reported as in depth. */
+    static final double DEPTH_SIGMAS = 5;
+
+    /** Least overlap at which messages are tested for depth. */
+    static final int MIN_OVERLAP = 50;
+
+    /** Bytes of traffic read at a time. */
+    static final int CHUNK_SIZE = 1 << 22;
+
+    /** Bytes counted by each leaf task. */
+    static final int LEAF_SIZE = 1 << 18;
+
+    /** Number of byte values. */
+    private static final int BYTES = 256;
+
+    /** Codes, other than alphabet indices, of line breaks, blanks, and
+     *  other characters. */
+    private static final int LINE = -1, BLANK = -2, OTHER = -3;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Indexed by byte, its index in my alphabet, or LINE, BLANK, or
+     *  OTHER. */
+    private final int[] _codes;
+
+    /** Indexed by character, the number of occurrences. */
+    private final long[] _counts;
+
+    /** The number of occurrences of B after A is at A * size + B. */
+    private final long[] _bigrams;
+
+    /** Number of messages counted. */
+    private long _messages;
+
+    /** Number of other characters skipped. */
+    private long _other;
+}
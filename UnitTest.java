@@ -11,7 +11,16 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      EngineTest.class,
+                                      CribTest.class,
+                                      StatsTest.class,
+                                      SearchTest.class,
+                                      FlowTest.class,
+                                      CatalogueTest.class,
+                                      BatchTest.class,
+                                      LibraryTest.class));
     }
 
 }